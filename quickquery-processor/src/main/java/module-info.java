@@ -0,0 +1,8 @@
+/**
+ * Module info for the QuickQuery annotation processor.
+ */
+module net.vjdv.quickquery.processor {
+    requires java.compiler;
+
+    provides javax.annotation.processing.Processor with net.vjdv.quickquery.processor.MapperProcessor;
+}
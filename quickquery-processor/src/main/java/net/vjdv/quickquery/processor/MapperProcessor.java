@@ -0,0 +1,201 @@
+package net.vjdv.quickquery.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code RecordMapper} for every record annotated with {@code net.vjdv.quickquery.GenerateMapper}. The
+ * generated class sits next to the record, is named after its binary name with the {@code _QuickQueryMapper} suffix
+ * and reads each component by column index with the getter the reflection mapper would use, so QuickQuery picks it up
+ * at runtime instead of reflecting on the record. Unsupported component types are compile errors
+ */
+@SupportedAnnotationTypes(MapperProcessor.ANNOTATION)
+public class MapperProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "net.vjdv.quickquery.GenerateMapper";
+    static final String SUFFIX = "_QuickQueryMapper";
+
+    /**
+     * Creates a new instance of MapperProcessor
+     */
+    public MapperProcessor() {
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (var annotation : annotations) {
+            for (var element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (accepted(element)) {
+                    generate((TypeElement) element);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the annotated element is a record the generated class can construct
+     *
+     * @param element annotated element
+     * @return true if a mapper can be generated, otherwise an error was reported
+     */
+    private boolean accepted(Element element) {
+        if (element.getKind() != ElementKind.RECORD) {
+            return error(element, "@GenerateMapper only applies to records");
+        }
+        if (!((TypeElement) element).getTypeParameters().isEmpty()) {
+            return error(element, "@GenerateMapper does not support generic records");
+        }
+        for (var type = element; type.getKind() != ElementKind.PACKAGE; type = type.getEnclosingElement()) {
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                return error(element, "@GenerateMapper records and their enclosing classes must not be private");
+            }
+        }
+        boolean supported = true;
+        for (var component : ((TypeElement) element).getRecordComponents()) {
+            if (getter(component) == null) {
+                supported = error(component, "Type " + component.asType() + " not supported by @GenerateMapper");
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Writes the mapper source of a record
+     *
+     * @param record record element
+     */
+    private void generate(TypeElement record) {
+        var elements = processingEnv.getElementUtils();
+        String packageName = elements.getPackageOf(record).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(record).toString();
+        String className = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, record).openWriter()) {
+            writer.write(source(record, packageName, className));
+        } catch (IOException ex) {
+            error(record, "Error writing mapper " + qualifiedName + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Builds the mapper source of a record
+     *
+     * @param record      record element
+     * @param packageName package of the record, may be empty
+     * @param className   simple name of the mapper
+     * @return Java source
+     */
+    static String source(TypeElement record, String packageName, String className) {
+        String type = record.getQualifiedName().toString();
+        List<? extends RecordComponentElement> components = record.getRecordComponents();
+        var out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n")
+                .append(" * Mapper of {@link ").append(type).append("} generated by quickquery-processor, do not edit\n")
+                .append(" */\n")
+                .append("public final class ").append(className)
+                .append(" implements net.vjdv.quickquery.RecordMapper<").append(type).append("> {\n")
+                .append("    private static final String[] COLUMNS = {");
+        for (int i = 0; i < components.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append('"').append(components.get(i).getSimpleName()).append('"');
+        }
+        out.append("};\n\n")
+                .append("    /**\n")
+                .append("     * Creates a new instance of ").append(className).append("\n")
+                .append("     */\n")
+                .append("    public ").append(className).append("() {\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public String[] columns() {\n")
+                .append("        return COLUMNS;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(type).append(" map(net.vjdv.quickquery.ResultSetWrapper rs, int[] indexes) {\n")
+                .append("        return new ").append(type).append("(");
+        boolean localDateTime = false;
+        for (int i = 0; i < components.size(); i++) {
+            String getter = getter(components.get(i));
+            localDateTime |= getter.startsWith("toLocal");
+            out.append(i == 0 ? "\n" : ",\n").append("                ").append(getter.replace("#", "indexes[" + i + "]"));
+        }
+        out.append(");\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Object[] values(").append(type).append(" record) {\n")
+                .append("        return new Object[]{");
+        for (int i = 0; i < components.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append("record.").append(components.get(i).getSimpleName()).append("()");
+        }
+        out.append("};\n")
+                .append("    }\n");
+        if (localDateTime) {
+            out.append("\n")
+                    .append("    private static java.time.LocalDateTime toLocal(java.time.ZonedDateTime value) {\n")
+                    .append("        return value == null ? null : value.toLocalDateTime();\n")
+                    .append("    }\n");
+        }
+        return out.append("}\n").toString();
+    }
+
+    /**
+     * Reading expression of a component, {@code #} stands for the column index. Mirrors the types supported by the
+     * reflection mapper, date times are stored as utc millis
+     *
+     * @param component record component
+     * @return the expression, null if the type is not supported
+     */
+    static String getter(RecordComponentElement component) {
+        var type = component.asType();
+        return switch (type.getKind()) {
+            case LONG -> "rs.getLong(#)";
+            case INT -> "rs.getInt(#)";
+            case BOOLEAN -> "rs.getBoolean(#)";
+            case DOUBLE -> "rs.getDouble(#)";
+            case FLOAT -> "rs.getFloat(#)";
+            case SHORT -> "rs.getShort(#)";
+            case BYTE -> "rs.getByte(#)";
+            case ARRAY -> ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? "rs.getBytes(#)" : null;
+            case DECLARED -> switch (((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString()) {
+                case "java.lang.String" -> "rs.getString(#)";
+                case "java.time.LocalDateTime" -> "toLocal(rs.getZonedDateTimeLong(#, java.time.ZoneId.systemDefault()))";
+                case "java.time.ZonedDateTime" -> "rs.getZonedDateTimeLong(#)";
+                default -> null;
+            };
+            default -> null;
+        };
+    }
+
+    /**
+     * Reports a compile error
+     *
+     * @param element element the error is about
+     * @param message error message
+     * @return false, so it can end a validation
+     */
+    private boolean error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return false;
+    }
+}
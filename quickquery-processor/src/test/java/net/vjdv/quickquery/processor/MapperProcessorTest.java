@@ -0,0 +1,135 @@
+package net.vjdv.quickquery.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Source generated for annotated records and errors for unsupported ones
+ */
+public class MapperProcessorTest {
+    private static final String ANNOTATION = """
+            package net.vjdv.quickquery;
+            public @interface GenerateMapper {
+            }
+            """;
+    private static final String RECORD_MAPPER = """
+            package net.vjdv.quickquery;
+            public interface RecordMapper<T> {
+            }
+            """;
+    private static final String RESULT_SET_WRAPPER = """
+            package net.vjdv.quickquery;
+            public class ResultSetWrapper {
+            }
+            """;
+
+    @Test
+    public void testGeneratesMapperOfNestedRecord() throws Exception {
+        var output = Files.createTempDirectory("processor");
+        var errors = process(output, "demo.Shop", """
+                package demo;
+                import net.vjdv.quickquery.GenerateMapper;
+                import java.time.LocalDateTime;
+                public class Shop {
+                    @GenerateMapper
+                    public record Sale(long id, String item, LocalDateTime at, byte[] receipt) {
+                    }
+                }
+                """);
+        Assertions.assertEquals(List.of(), errors);
+        String source = Files.readString(output.resolve("demo/Shop$Sale_QuickQueryMapper.java"));
+        Assertions.assertTrue(source.contains("public final class Shop$Sale_QuickQueryMapper implements net.vjdv.quickquery.RecordMapper<demo.Shop.Sale>"));
+        Assertions.assertTrue(source.contains("private static final String[] COLUMNS = {\"id\", \"item\", \"at\", \"receipt\"};"));
+        Assertions.assertTrue(source.contains("rs.getLong(indexes[0]),\n                rs.getString(indexes[1]),"));
+        Assertions.assertTrue(source.contains("toLocal(rs.getZonedDateTimeLong(indexes[2], java.time.ZoneId.systemDefault()))"));
+        Assertions.assertTrue(source.contains("rs.getBytes(indexes[3]));"));
+        Assertions.assertTrue(source.contains("return new Object[]{record.id(), record.item(), record.at(), record.receipt()};"));
+    }
+
+    @Test
+    public void testCheckedInMapperMatchesProcessor() throws Exception {
+        var tests = Path.of(System.getProperty("basedir", "."), "..", "src", "test", "java", "net", "vjdv");
+        var output = Files.createTempDirectory("processor");
+        var errors = process(output, "net.vjdv.Reading", Files.readString(tests.resolve("Reading.java")));
+        Assertions.assertEquals(List.of(), errors);
+        Assertions.assertEquals(Files.readString(tests.resolve("Reading_QuickQueryMapper.java")),
+                Files.readString(output.resolve("net/vjdv/Reading_QuickQueryMapper.java")),
+                "Regenerate Reading_QuickQueryMapper.java of the library tests with this processor");
+    }
+
+    @Test
+    public void testRejectsUnsupportedRecords() throws Exception {
+        var output = Files.createTempDirectory("processor");
+        var errors = process(output, "demo.Bad", """
+                package demo;
+                import net.vjdv.quickquery.GenerateMapper;
+                public class Bad {
+                    @GenerateMapper
+                    private record Hidden(long id) {
+                    }
+                    @GenerateMapper
+                    public record Unsupported(long id, java.math.BigDecimal amount) {
+                    }
+                    @GenerateMapper
+                    public static class NotRecord {
+                    }
+                }
+                """);
+        Assertions.assertEquals(3, errors.size(), errors.toString());
+        Assertions.assertTrue(errors.stream().anyMatch(e -> e.contains("must not be private")));
+        Assertions.assertTrue(errors.stream().anyMatch(e -> e.contains("java.math.BigDecimal not supported")));
+        Assertions.assertTrue(errors.stream().anyMatch(e -> e.contains("only applies to records")));
+        try (var generated = Files.walk(output)) {
+            Assertions.assertEquals(0, generated.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * Runs the processor alone over a source file and stubs of the runtime types
+     *
+     * @param output    directory of the generated sources
+     * @param className qualified name of the source class
+     * @param code      source code
+     * @return error messages
+     */
+    private static List<String> process(Path output, String className, String code) {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var sources = List.of(source("net.vjdv.quickquery.GenerateMapper", ANNOTATION),
+                source("net.vjdv.quickquery.RecordMapper", RECORD_MAPPER),
+                source("net.vjdv.quickquery.ResultSetWrapper", RESULT_SET_WRAPPER),
+                source(className, code));
+        var task = compiler.getTask(null, null, diagnostics, List.of("-proc:only", "-s", output.toString()), null, sources);
+        task.setProcessors(List.of(new MapperProcessor()));
+        task.call();
+        return diagnostics.getDiagnostics().stream()
+                .filter(d -> d.getKind() == javax.tools.Diagnostic.Kind.ERROR)
+                .map(d -> d.getMessage(null))
+                .toList();
+    }
+
+    /**
+     * In-memory source file
+     *
+     * @param className qualified class name
+     * @param code      source code
+     * @return the file object
+     */
+    private static JavaFileObject source(String className, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}
@@ -5,4 +5,7 @@ module net.vjdv.quickquery {
     requires java.sql;
 
     exports net.vjdv.quickquery;
+    exports net.vjdv.quickquery.exceptions;
+
+    uses net.vjdv.quickquery.Dialect;
 }
@@ -0,0 +1,199 @@
+package net.vjdv.quickquery;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tunes the fetch size of queries from the width of their rows: the first rows of a scan are fetched in a small batch,
+ * their estimated size sets the fetch size for the rest of the scan so a fetch stays within the buffer budget, and the
+ * value is remembered by SQL fingerprint so later executions start with it. Share an instance to share what it learns
+ */
+public class AdaptiveFetchSize {
+    private static final int CACHE_LIMIT = 2048;
+    private final Map<String, Integer> tuned = new ConcurrentHashMap<>();
+    private final long maxBufferBytes;
+    private int minRows = 10;
+    private int maxRows = 10_000;
+    private int sampleRows = 32;
+
+    /**
+     * Creates a new instance of AdaptiveFetchSize
+     *
+     * @param maxBufferBytes approximate memory a single fetch may use
+     */
+    public AdaptiveFetchSize(long maxBufferBytes) {
+        this.maxBufferBytes = maxBufferBytes;
+    }
+
+    /**
+     * Sets the smallest fetch size, defaults to 10
+     *
+     * @param minRows minimum rows per fetch
+     * @return same AdaptiveFetchSize instance
+     */
+    public AdaptiveFetchSize minRows(int minRows) {
+        this.minRows = minRows;
+        return this;
+    }
+
+    /**
+     * Sets the largest fetch size, defaults to 10000
+     *
+     * @param maxRows maximum rows per fetch
+     * @return same AdaptiveFetchSize instance
+     */
+    public AdaptiveFetchSize maxRows(int maxRows) {
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Sets the number of rows sampled to estimate the row width, also the size of the first fetch. Defaults to 32
+     *
+     * @param sampleRows sampled rows
+     * @return same AdaptiveFetchSize instance
+     */
+    public AdaptiveFetchSize sampleRows(int sampleRows) {
+        this.sampleRows = sampleRows;
+        return this;
+    }
+
+    /**
+     * Returns the fetch size learned for a query
+     *
+     * @param sql query
+     * @return tuned fetch size, empty if the query has not been sampled yet
+     */
+    public OptionalInt tunedFetchSize(String sql) {
+        var size = tuned.get(fingerprint(sql));
+        return size == null ? OptionalInt.empty() : OptionalInt.of(size);
+    }
+
+    /**
+     * Prepares a statement before it is executed, applying the learned fetch size or the sampling one
+     *
+     * @param stmt statement about to be executed
+     * @param sql  its SQL, null skips tuning
+     * @return sampler to feed with the first rows, null when the size is already known
+     * @throws SQLException if the fetch size cannot be set
+     */
+    Sampler start(PreparedStatement stmt, String sql) throws SQLException {
+        if (sql == null) {
+            return null;
+        }
+        String key = fingerprint(sql);
+        Integer size = tuned.get(key);
+        if (size != null) {
+            stmt.setFetchSize(size);
+            return null;
+        }
+        stmt.setFetchSize(sampleRows);
+        return new Sampler(key);
+    }
+
+    /**
+     * Normalizes a query so executions differing only in literals or whitespace share the tuned value
+     *
+     * @param sql query
+     * @return fingerprint
+     */
+    static String fingerprint(String sql) {
+        var out = new StringBuilder(sql.length());
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                int end = i + 1;
+                while (end < n && (sql.charAt(end) != '\'' || (end + 1 < n && sql.charAt(end + 1) == '\''))) {
+                    end += sql.charAt(end) == '\'' ? 2 : 1;
+                }
+                out.append('?');
+                i = end;
+            } else if (Character.isDigit(c) && (out.isEmpty() || !isIdentifierPart(out.charAt(out.length() - 1)))) {
+                while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else if (Character.isWhitespace(c)) {
+                if (!out.isEmpty() && out.charAt(out.length() - 1) != ' ') {
+                    out.append(' ');
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString().strip();
+    }
+
+    /**
+     * Whether a char can be part of an identifier, digits after it are not literals
+     *
+     * @param c char
+     * @return true for letters, digits and underscore
+     */
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Estimates the memory taken by a column value
+     *
+     * @param value column value
+     * @return approximate bytes
+     */
+    private static long width(Object value) {
+        if (value == null) {
+            return 8;
+        } else if (value instanceof String s) {
+            return 40L + s.length();
+        } else if (value instanceof byte[] b) {
+            return 16L + b.length;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        return 48;
+    }
+
+    /**
+     * Measures the first rows of a scan and sets the fetch size for the rest of it
+     */
+    final class Sampler {
+        private final String key;
+        private long bytes;
+        private int rows;
+
+        private Sampler(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Measures the current row, once enough rows are sampled the fetch size is set and remembered
+         *
+         * @param rs result set positioned on a row
+         * @throws SQLException if the row cannot be read
+         */
+        void sample(ResultSet rs) throws SQLException {
+            if (rows >= sampleRows) {
+                return;
+            }
+            int columns = rs.getMetaData().getColumnCount();
+            long width = 16;
+            for (int i = 1; i <= columns; i++) {
+                width += width(rs.getObject(i));
+            }
+            bytes += width;
+            if (++rows == sampleRows) {
+                long perRow = Math.max(1, bytes / rows);
+                int size = (int) Math.max(minRows, Math.min(maxRows, maxBufferBytes / perRow));
+                rs.setFetchSize(size);
+                if (tuned.size() < CACHE_LIMIT) {
+                    tuned.put(key, size);
+                }
+            }
+        }
+    }
+}
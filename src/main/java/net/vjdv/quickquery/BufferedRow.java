@@ -0,0 +1,587 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * ResultSetWrapper over a row copied out of the result set, so it can be mapped on another thread while the cursor
+ * moves on. Values are copied with {@code getObject}, LOBs as bytes or strings, and the getters convert them the way
+ * drivers usually do. The row has no cursor: {@link #next()} is not supported and {@link #getResultSet()} is null
+ */
+final class BufferedRow extends ResultSetWrapper {
+    private final Layout layout;
+    private Object[] values;
+    private boolean wasNull;
+
+    /**
+     * Creates a new instance of BufferedRow, positioned with {@link #set(Object[])}
+     *
+     * @param layout columns of the result set
+     */
+    BufferedRow(Layout layout) {
+        super(null);
+        this.layout = layout;
+    }
+
+    /**
+     * Positions the view on a copied row
+     *
+     * @param values values copied by {@link Layout#copy(ResultSet)}
+     */
+    void set(Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns a column value recording whether it was NULL
+     *
+     * @param column column index
+     * @return the value
+     */
+    private Object value(int column) {
+        if (column < 1 || column > values.length) {
+            throw new DataAccessException("Column index " + column + " out of range");
+        }
+        Object value = values[column - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    /**
+     * Returns a column value recording whether it was NULL
+     *
+     * @param column column label, case insensitive
+     * @return the value
+     */
+    private Object value(String column) {
+        return value(layout.index(column));
+    }
+
+    /**
+     * Converts a value to a number
+     *
+     * @param value  column value, not null
+     * @param column column name or index for error messages
+     * @return the number
+     */
+    private static Number number(Object value, Object column) {
+        if (value instanceof Number n) {
+            return n;
+        } else if (value instanceof Boolean b) {
+            return b ? 1 : 0;
+        } else if (value instanceof String s) {
+            try {
+                return new BigDecimal(s.trim());
+            } catch (NumberFormatException ex) {
+                throw new DataAccessException("Error getting number from column " + column, ex);
+            }
+        }
+        throw new DataAccessException("Error getting number from column " + column + ", found " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * Converts a value to a boolean
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the boolean, false for NULL
+     */
+    private static boolean bool(Object value, Object column) {
+        if (value == null) {
+            return false;
+        } else if (value instanceof Boolean b) {
+            return b;
+        } else if (value instanceof String s && (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false"))) {
+            return Boolean.parseBoolean(s);
+        }
+        return number(value, column).doubleValue() != 0;
+    }
+
+    /**
+     * Converts a value to bytes
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the bytes, null for NULL
+     */
+    private static byte[] bytes(Object value, Object column) {
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+        throw new DataAccessException("Error getting bytes from column " + column + ", found " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * Converts a value to a string
+     *
+     * @param value column value
+     * @return the string, null for NULL
+     */
+    private static String string(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        } else if (value instanceof byte[] b) {
+            return new String(b, StandardCharsets.UTF_8);
+        } else if (value instanceof BigDecimal d) {
+            return d.toPlainString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Converts a value to a timestamp, numbers are milliseconds since epoch
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the timestamp, null for NULL
+     */
+    private static Timestamp timestamp(Object value, Object column) {
+        if (value == null || value instanceof Timestamp) {
+            return (Timestamp) value;
+        } else if (value instanceof java.util.Date d) {
+            return new Timestamp(d.getTime());
+        } else if (value instanceof LocalDateTime t) {
+            return Timestamp.valueOf(t);
+        } else if (value instanceof LocalDate d) {
+            return Timestamp.valueOf(d.atStartOfDay());
+        } else if (value instanceof OffsetDateTime t) {
+            return Timestamp.from(t.toInstant());
+        } else if (value instanceof ZonedDateTime t) {
+            return Timestamp.from(t.toInstant());
+        } else if (value instanceof Instant t) {
+            return Timestamp.from(t);
+        } else if (value instanceof Number n) {
+            return new Timestamp(n.longValue());
+        } else if (value instanceof String s) {
+            try {
+                return s.length() == 10 ? Timestamp.valueOf(LocalDate.parse(s).atStartOfDay()) : Timestamp.valueOf(s.replace('T', ' '));
+            } catch (RuntimeException ex) {
+                throw new DataAccessException("Error getting timestamp from column " + column, ex);
+            }
+        }
+        throw new DataAccessException("Error getting timestamp from column " + column + ", found " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * Converts a value to a date
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the date, null for NULL
+     */
+    private static Date date(Object value, Object column) {
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        } else if (value instanceof LocalDate d) {
+            return Date.valueOf(d);
+        }
+        return new Date(timestamp(value, column).getTime());
+    }
+
+    /**
+     * Converts a value to a time
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the time, null for NULL
+     */
+    private static Time time(Object value, Object column) {
+        if (value == null || value instanceof Time) {
+            return (Time) value;
+        } else if (value instanceof LocalTime t) {
+            return Time.valueOf(t);
+        } else if (value instanceof String s && s.length() <= 8) {
+            try {
+                return Time.valueOf(s);
+            } catch (IllegalArgumentException ex) {
+                throw new DataAccessException("Error getting time from column " + column, ex);
+            }
+        }
+        return new Time(timestamp(value, column).getTime());
+    }
+
+    /**
+     * Converts a value to the requested type
+     *
+     * @param value  column value
+     * @param type   requested type
+     * @param column column name or index for error messages
+     * @param <T>    the type of the object
+     * @return the converted value, null for NULL
+     */
+    private static <T> T convert(Object value, Class<T> type, Object column) {
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+        Object converted;
+        if (type == String.class) {
+            converted = string(value);
+        } else if (type == Long.class) {
+            converted = number(value, column).longValue();
+        } else if (type == Integer.class) {
+            converted = number(value, column).intValue();
+        } else if (type == Double.class) {
+            converted = number(value, column).doubleValue();
+        } else if (type == Float.class) {
+            converted = number(value, column).floatValue();
+        } else if (type == Short.class) {
+            converted = number(value, column).shortValue();
+        } else if (type == Byte.class) {
+            converted = number(value, column).byteValue();
+        } else if (type == BigDecimal.class) {
+            converted = new BigDecimal(string(value));
+        } else if (type == BigInteger.class) {
+            converted = new BigDecimal(string(value)).toBigInteger();
+        } else if (type == Boolean.class) {
+            converted = bool(value, column);
+        } else if (type == byte[].class) {
+            converted = bytes(value, column);
+        } else if (type == LocalDateTime.class) {
+            converted = timestamp(value, column).toLocalDateTime();
+        } else if (type == LocalDate.class) {
+            converted = date(value, column).toLocalDate();
+        } else if (type == LocalTime.class) {
+            converted = time(value, column).toLocalTime();
+        } else if (type == Instant.class) {
+            converted = timestamp(value, column).toInstant();
+        } else if (type == Timestamp.class) {
+            converted = timestamp(value, column);
+        } else if (type == Date.class) {
+            converted = date(value, column);
+        } else if (type == Time.class) {
+            converted = time(value, column);
+        } else {
+            throw new DataAccessException("Error getting object from column " + column + ", " + value.getClass().getSimpleName()
+                    + " cannot be converted to " + type.getSimpleName());
+        }
+        return type.cast(converted);
+    }
+
+    /**
+     * Milliseconds since epoch as a UTC date time
+     *
+     * @param value  column value
+     * @param column column name or index for error messages
+     * @return the date time, null for NULL
+     */
+    private static ZonedDateTime epochMillis(Object value, Object column) {
+        if (value == null) {
+            return null;
+        }
+        return Instant.ofEpochMilli(number(value, column).longValue()).atZone(ZoneOffset.UTC);
+    }
+
+    @Override
+    public ResultSet getResultSet() {
+        return null;
+    }
+
+    @Override
+    public int findColumn(String column) {
+        return layout.index(column);
+    }
+
+    @Override
+    Object source() {
+        return layout;
+    }
+
+    @Override
+    public boolean next() {
+        throw new UnsupportedOperationException("Buffered rows have no cursor");
+    }
+
+    @Override
+    public boolean getBoolean(String column) {
+        return bool(value(column), column);
+    }
+
+    @Override
+    public boolean getBoolean(int column) {
+        return bool(value(column), column);
+    }
+
+    @Override
+    public byte getByte(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).byteValue();
+    }
+
+    @Override
+    public byte getByte(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).byteValue();
+    }
+
+    @Override
+    public byte[] getBytes(String column) {
+        return bytes(value(column), column);
+    }
+
+    @Override
+    public byte[] getBytes(int column) {
+        return bytes(value(column), column);
+    }
+
+    @Override
+    public InputStream getBinaryStream(String column) {
+        byte[] bytes = getBytes(column);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public InputStream getBinaryStream(int column) {
+        byte[] bytes = getBytes(column);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public Reader getCharacterStream(String column) {
+        String value = getString(column);
+        return value == null ? null : new StringReader(value);
+    }
+
+    @Override
+    public Reader getCharacterStream(int column) {
+        String value = getString(column);
+        return value == null ? null : new StringReader(value);
+    }
+
+    @Override
+    public Date getDate(String column) {
+        return date(value(column), column);
+    }
+
+    @Override
+    public Date getDate(int column) {
+        return date(value(column), column);
+    }
+
+    @Override
+    public double getDouble(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).doubleValue();
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).doubleValue();
+    }
+
+    @Override
+    public float getFloat(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).floatValue();
+    }
+
+    @Override
+    public float getFloat(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).floatValue();
+    }
+
+    @Override
+    public int getInt(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).intValue();
+    }
+
+    @Override
+    public int getInt(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).intValue();
+    }
+
+    @Override
+    public String getString(String column) {
+        return string(value(column));
+    }
+
+    @Override
+    public String getString(int column) {
+        return string(value(column));
+    }
+
+    @Override
+    public ZonedDateTime getZonedDateTimeLong(String column) {
+        return epochMillis(value(column), column);
+    }
+
+    @Override
+    public ZonedDateTime getZonedDateTimeLong(int column) {
+        return epochMillis(value(column), column);
+    }
+
+    @Override
+    public LocalDateTime getLocalDateTimeLong(int column) {
+        var dateTime = epochMillis(value(column), column);
+        return dateTime == null ? null : dateTime.toLocalDateTime();
+    }
+
+    @Override
+    public long getLong(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).longValue();
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).longValue();
+    }
+
+    @Override
+    public Object getObject(String column) {
+        return value(column);
+    }
+
+    @Override
+    public Object getObject(int column) {
+        return value(column);
+    }
+
+    @Override
+    public <T> T getObject(String column, Class<T> type) {
+        return convert(value(column), type, column);
+    }
+
+    @Override
+    public <T> T getObject(int column, Class<T> type) {
+        return convert(value(column), type, column);
+    }
+
+    @Override
+    public short getShort(String column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).shortValue();
+    }
+
+    @Override
+    public short getShort(int column) {
+        Object value = value(column);
+        return value == null ? 0 : number(value, column).shortValue();
+    }
+
+    @Override
+    public Time getTime(String column) {
+        return time(value(column), column);
+    }
+
+    @Override
+    public Time getTime(int column) {
+        return time(value(column), column);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String column) {
+        return timestamp(value(column), column);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int column) {
+        return timestamp(value(column), column);
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    /**
+     * Columns of a result set, shared by every buffered row of a scan. Copies rows on the reading thread
+     */
+    static final class Layout {
+        private final Map<String, Integer> indexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final int columns;
+        private final boolean[] pooled;
+        private final StringPool pool;
+
+        /**
+         * Creates a new instance of Layout
+         *
+         * @param metadata      metadata of the result set
+         * @param pool          pool deduplicating copied strings, may be null
+         * @param pooledColumns columns to deduplicate; all columns when empty
+         * @throws SQLException if the metadata cannot be read
+         */
+        Layout(ResultSetMetaData metadata, StringPool pool, String... pooledColumns) throws SQLException {
+            this.columns = metadata.getColumnCount();
+            this.pool = pool;
+            this.pooled = new boolean[columns];
+            Set<String> pooledSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            pooledSet.addAll(Set.of(pooledColumns));
+            for (int i = 1; i <= columns; i++) {
+                String label = metadata.getColumnLabel(i);
+                indexes.putIfAbsent(label, i);
+                pooled[i - 1] = pool != null && (pooledSet.isEmpty() || pooledSet.contains(label));
+            }
+        }
+
+        /**
+         * Resolves a column label
+         *
+         * @param column column label, case insensitive
+         * @return column index
+         */
+        int index(String column) {
+            Integer index = indexes.get(column);
+            if (index == null) {
+                throw new DataAccessException("Column " + column + " not found");
+            }
+            return index;
+        }
+
+        /**
+         * Copies the current row, LOBs are read fully
+         *
+         * @param rs result set positioned on a row
+         * @return column values
+         * @throws SQLException if a value cannot be read
+         */
+        Object[] copy(ResultSet rs) throws SQLException {
+            var values = new Object[columns];
+            for (int i = 0; i < columns; i++) {
+                Object value = rs.getObject(i + 1);
+                if (value instanceof Blob blob) {
+                    value = blob.getBytes(1, (int) blob.length());
+                } else if (value instanceof Clob clob) {
+                    value = clob.getSubString(1, (int) clob.length());
+                }
+                if (pooled[i] && value instanceof String s) {
+                    value = pool.dedup(s);
+                }
+                values[i] = value;
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.LimitExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the statements running at the same time against a database with a limit adapted from observed latency:
+ * additive increase while latency stays near the best seen, multiplicative decrease when it grows past the tolerance.
+ * Calls over the limit wait in a queue up to a maximum time and are rejected with {@link LimitExceededException}
+ * when the wait or the queue length is exceeded
+ */
+public class ConcurrencyLimiter {
+    private static final int BASELINE_WINDOW = 1000;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final LongAdder rejected = new LongAdder();
+    private double limit;
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    private double backoff = 0.9;
+    private double tolerance = 2.0;
+    private Duration maxWait = Duration.ofSeconds(5);
+    private int maxQueued = Integer.MAX_VALUE;
+    private int inFlight;
+    private int queued;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+
+    /**
+     * Creates a new instance of ConcurrencyLimiter
+     *
+     * @param initialLimit concurrency allowed before any latency has been observed
+     */
+    public ConcurrencyLimiter(int initialLimit) {
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Sets the lowest limit reached by decreases, defaults to 1
+     *
+     * @param minLimit minimum concurrency
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter minLimit(int minLimit) {
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    /**
+     * Sets the highest limit reached by increases, defaults to 200
+     *
+     * @param maxLimit maximum concurrency
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter maxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Sets the factor applied to the limit when latency is too high, defaults to 0.9
+     *
+     * @param backoff factor between 0 and 1
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter backoff(double backoff) {
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * Sets how many times the best observed latency a statement may take before the limit is decreased, defaults to 2
+     *
+     * @param tolerance latency ratio
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter tolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a call waits for a slot, zero rejects immediately when the limit is reached. Defaults to 5 seconds
+     *
+     * @param maxWait maximum wait
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter maxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of calls waiting for a slot, further calls are rejected immediately. Unbounded by default
+     *
+     * @param maxQueued maximum queue length
+     * @return same ConcurrencyLimiter instance
+     */
+    public ConcurrencyLimiter maxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    /**
+     * Current concurrency limit
+     *
+     * @return allowed statements in flight
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Statements currently holding a slot
+     *
+     * @return statements in flight
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of calls rejected since creation
+     *
+     * @return rejected count
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Waits for a slot, the returned permit must be closed once the statement completes
+     *
+     * @return permit holding the slot
+     * @throws LimitExceededException if no slot is available within the maximum wait or the queue is full
+     */
+    public Permit acquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (queued >= maxQueued || maxWait.isZero()) {
+                    rejected.increment();
+                    throw new LimitExceededException("Concurrency limit of " + (int) limit + " reached");
+                }
+                long remaining = maxWait.toNanos();
+                queued++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            rejected.increment();
+                            throw new LimitExceededException("Timed out after " + maxWait.toMillis() + " ms waiting for a database slot");
+                        }
+                        remaining = available.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new LimitExceededException("Interrupted while waiting for a database slot", ex);
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+            return new Permit(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a slot and adapts the limit to the latency of the statement
+     *
+     * @param nanos latency of the statement
+     */
+    private void release(long nanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            windowMinNanos = Math.min(windowMinNanos, nanos);
+            if (++windowSamples == BASELINE_WINDOW) {
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+            baselineNanos = Math.min(baselineNanos, nanos);
+            if (nanos > baselineNanos * tolerance) {
+                limit = Math.max(minLimit, limit * backoff);
+            } else if (inFlight + 1 >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slot held by a statement, closing it releases the slot once
+     */
+    public final class Permit implements AutoCloseable {
+        private final long start;
+        private boolean closed;
+
+        private Permit(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Releases the slot recording the time it was held
+         */
+        @Override
+        public void close() {
+            close(System.nanoTime() - start);
+        }
+
+        /**
+         * Releases the slot recording the given latency, used when only part of the time held was spent on the database
+         *
+         * @param nanos latency of the statement
+         */
+        void close(long nanos) {
+            if (!closed) {
+                closed = true;
+                release(nanos);
+            }
+        }
+    }
+}
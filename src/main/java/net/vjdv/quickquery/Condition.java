@@ -1,5 +1,11 @@
 package net.vjdv.quickquery;
 
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents a condition for filtering data in a query.
  *
@@ -8,6 +14,38 @@ package net.vjdv.quickquery;
  * @param value    the value to compare against
  */
 public record Condition(String column, String operator, Object value) {
+    /**
+     * Operator of an IN list bound with one placeholder per value, padded to a power of two
+     */
+    public static final String IN = "IN";
+    /**
+     * Operator of an IN list bound as a single array parameter with {@code = ANY(?)}
+     */
+    public static final String ANY = "= ANY";
+    /**
+     * Operator of an IN list bound as a single JSON array parameter expanded with {@code json_each}
+     */
+    public static final String IN_JSON = "IN json_each";
+
+    /**
+     * Validates the values of an IN condition and keeps an immutable copy of them
+     *
+     * @throws DataAccessException if an IN condition has no collection of values or one of them is null
+     */
+    public Condition {
+        if (IN.equals(operator)) {
+            if (!(value instanceof Collection<?> values)) {
+                throw new DataAccessException("IN condition on " + column + " requires a collection of values");
+            }
+            for (var item : values) {
+                if (item == null) {
+                    throw new DataAccessException("IN condition on " + column + " has a null value, use IS NULL instead");
+                }
+            }
+            value = List.copyOf(values);
+        }
+    }
+
     /**
      * Creates a new Condition instance. Operator defaults to '='.
      *
@@ -17,4 +55,116 @@ public record Condition(String column, String operator, Object value) {
     public Condition(String column, Object value) {
         this(column, "=", value);
     }
+
+    /**
+     * Creates an IN condition with one placeholder per value. The number of placeholders is rounded up to the next power of two
+     * repeating the last value, so lists of different sizes share a few SQL shapes and statement caches are reused
+     *
+     * @param column the column name to filter by
+     * @param values the values to match, not null
+     * @return IN Condition
+     * @throws DataAccessException if the values are null or contain null
+     */
+    public static Condition in(String column, Collection<?> values) {
+        return new Condition(column, IN, values);
+    }
+
+    /**
+     * Creates a {@code column = ANY(?)} condition binding the values as a single array, the SQL is the same for any list size.
+     * Requires a driver supporting {@link java.sql.Connection#createArrayOf(String, Object[])}, like PostgreSQL
+     *
+     * @param column   the column name to filter by
+     * @param typeName SQL name of the element type (e.g. "text", "bigint")
+     * @param values   the values to match
+     * @return ANY Condition
+     */
+    public static Condition anyOf(String column, String typeName, Collection<?> values) {
+        return new Condition(column, ANY, new SqlArray(typeName, values.toArray()));
+    }
+
+    /**
+     * Creates a {@code column IN (SELECT value FROM json_each(?))} condition binding the values as a single JSON array,
+     * the SQL is the same for any list size. Supported by SQLite
+     *
+     * @param column the column name to filter by
+     * @param values the values to match, numbers, booleans or strings
+     * @return JSON IN Condition
+     */
+    public static Condition inJson(String column, Collection<?> values) {
+        return new Condition(column, IN_JSON, toJsonArray(values));
+    }
+
+    /**
+     * Appends the SQL of this condition and its parameters
+     *
+     * @param sql        the SQL being built
+     * @param parameters the parameters being built
+     * @param index      index of the next parameter
+     * @return index of the next parameter after this condition
+     */
+    int appendTo(StringBuilder sql, Map<Integer, Object> parameters, int index) {
+        switch (operator) {
+            case IN -> {
+                var values = (List<?>) value;
+                if (values.isEmpty()) {
+                    sql.append(column).append(" IN (NULL)");
+                    return index;
+                }
+                int bucket = Integer.highestOneBit(values.size());
+                if (bucket < values.size()) {
+                    bucket <<= 1;
+                }
+                sql.append(column).append(" IN (");
+                for (int i = 0; i < bucket; i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                    parameters.put(index++, values.get(Math.min(i, values.size() - 1)));
+                }
+                sql.append(")");
+            }
+            case ANY -> {
+                sql.append(column).append(" = ANY(?)");
+                parameters.put(index++, value);
+            }
+            case IN_JSON -> {
+                sql.append(column).append(" IN (SELECT value FROM json_each(?))");
+                parameters.put(index++, value);
+            }
+            default -> {
+                sql.append(column).append(" ").append(operator).append(" ?");
+                parameters.put(index++, value);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Encodes values as a JSON array
+     *
+     * @param values numbers, booleans or strings
+     * @return JSON array text
+     */
+    private static String toJsonArray(Collection<?> values) {
+        var json = new StringBuilder("[");
+        for (var value : values) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+                continue;
+            }
+            json.append('"');
+            for (char c : value.toString().toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+        return json.append(']').toString();
+    }
 }
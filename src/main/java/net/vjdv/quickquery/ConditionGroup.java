@@ -81,8 +81,7 @@ public class ConditionGroup {
      * @return the current ConditionGroup instance for method chaining
      */
     private ConditionGroup add(Condition c) {
-        sql.append(c.column()).append(" ").append(c.operator()).append(" ?");
-        indexParameters.put(index++, c.value());
+        index = c.appendTo(sql, indexParameters, index);
         return this;
     }
 
@@ -5,6 +5,7 @@ import net.vjdv.quickquery.exceptions.DataAccessException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
 
 public interface ConnectionWrapper {
 
@@ -20,12 +21,40 @@ public interface ConnectionWrapper {
         var conn = getConnection();
         try {
             var stmt = conn.prepareStatement(sql);
-            return new PreparedStatementBuilder(conn, stmt);
+            return new PreparedStatementBuilder(conn, stmt, sql);
         } catch (SQLException ex) {
             throw new DataAccessException("Error creating prepared statement", ex);
         }
     }
 
+    /**
+     * Creates a new PreparedStatementBuilder for a query with {@code :name} parameters bound from a map.
+     * The parsed SQL is cached so later calls with the same SQL skip parsing. Missing parameters are reported before the
+     * statement is prepared
+     *
+     * @param sql        query with named parameters
+     * @param parameters values by parameter name
+     * @return PreparedStatementBuilder with the parameters set
+     */
+    default PreparedStatementBuilder query(String sql, Map<String, ?> parameters) {
+        var named = NamedSql.of(sql);
+        var resolved = named.parameters(parameters);
+        return query(named.sql()).setParameters(resolved);
+    }
+
+    /**
+     * Creates a new PreparedStatementBuilder for a query with {@code :name} parameters bound from the components of a record
+     * with the same names. The parsed SQL is cached so later calls with the same SQL skip parsing. The values are read
+     * before the statement is prepared
+     *
+     * @param sql        query with named parameters
+     * @param parameters record whose components provide the values
+     * @return PreparedStatementBuilder with the parameters set
+     */
+    default PreparedStatementBuilder query(String sql, Record parameters) {
+        return query(sql, Records.values(parameters));
+    }
+
     /**
      * Creates a new PreparedStatementBuilder for a query with generated keys, useful for autoincrement or serial columns
      *
@@ -36,12 +65,21 @@ public interface ConnectionWrapper {
         var conn = getConnection();
         try {
             var stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            return new PreparedStatementBuilder(conn, stmt);
+            return new PreparedStatementBuilder(conn, stmt, sql);
         } catch (SQLException ex) {
             throw new DataAccessException("Error creating prepared statement", ex);
         }
     }
 
+    /**
+     * Creates a pipeline to send several independent queries in as few round trips as the driver allows
+     *
+     * @return QueryPipeline bound to a single connection
+     */
+    default QueryPipeline pipeline() {
+        return new QueryPipeline(getConnection());
+    }
+
     /**
      * Enables auto-commit mode for the connection. In auto-commit mode, each individual SQL statement is treated as a transaction and is automatically committed after it is executed. This means that if you execute a statement that modifies the database, the changes will be immediately saved without needing to call commit() explicitly.
      */
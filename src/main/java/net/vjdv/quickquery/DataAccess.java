@@ -1,9 +1,28 @@
 package net.vjdv.quickquery;
 
+import net.vjdv.quickquery.exceptions.DataAccessException;
+import net.vjdv.quickquery.exceptions.QueryTimeoutException;
+
+import java.lang.reflect.RecordComponent;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 /**
@@ -11,6 +30,12 @@ import java.util.function.Supplier;
  */
 public class DataAccess implements ConnectionWrapper {
     private final Supplier<Connection> connectionSupplier;
+    private volatile Dialect dialect;
+    private volatile ConcurrencyLimiter limiter;
+    private volatile Duration defaultTimeout;
+    private volatile AdaptiveFetchSize fetchSize;
+    private volatile QueryPlans plans;
+    private final Map<Class<?>, NearCache<?>> nearCaches = new ConcurrentHashMap<>();
 
     /**
      * Creates a new instance of DataAccess
@@ -41,6 +66,459 @@ public class DataAccess implements ConnectionWrapper {
     }
 
 
+    /**
+     * Creates a new PreparedStatementBuilder for a query, holding a slot of the concurrency limiter until it is executed.
+     * The statement gets the earliest of the default timeout and the deadline of the current thread
+     *
+     * @param sql query
+     * @return PreparedStatementBuilder
+     * @throws net.vjdv.quickquery.exceptions.LimitExceededException if the limiter rejects the call
+     * @throws QueryTimeoutException                                 if the deadline of the current thread has passed
+     */
+    @Override
+    public PreparedStatementBuilder query(String sql) {
+        return guarded(() -> prepare(sql));
+    }
+
+    /**
+     * Creates a new PreparedStatementBuilder for a query with generated keys, holding a slot of the concurrency limiter
+     * until it is executed. The statement gets the earliest of the default timeout and the deadline of the current thread
+     *
+     * @param sql query
+     * @return PreparedStatementBuilder
+     * @throws net.vjdv.quickquery.exceptions.LimitExceededException if the limiter rejects the call
+     * @throws QueryTimeoutException                                 if the deadline of the current thread has passed
+     */
+    @Override
+    public PreparedStatementBuilder queryWithGeneratedKey(String sql) {
+        return guarded(() -> ConnectionWrapper.super.queryWithGeneratedKey(sql));
+    }
+
+    /**
+     * Acquires the connection and prepares the statement of a query, subclasses may route it to other connections
+     *
+     * @param sql query
+     * @return PreparedStatementBuilder
+     */
+    protected PreparedStatementBuilder prepare(String sql) {
+        return ConnectionWrapper.super.query(sql);
+    }
+
+    /**
+     * Returns the concurrency limiter
+     *
+     * @return ConcurrencyLimiter or null if calls are not limited
+     */
+    public ConcurrencyLimiter concurrencyLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Limits the statements in flight, slots are taken before acquiring the connection and released once the statement
+     * has been executed and its results read. Statements prepared but never executed keep their slot
+     *
+     * @param limiter concurrency limiter, null to disable
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the timeout applied to every statement
+     *
+     * @return default timeout or null if statements have no timeout
+     */
+    public Duration defaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Sets a timeout applied to every statement from the moment it is prepared, see {@link PreparedStatementBuilder#timeout(Duration)}
+     *
+     * @param timeout default timeout, null to disable
+     */
+    public void setDefaultTimeout(Duration timeout) {
+        this.defaultTimeout = timeout;
+    }
+
+    /**
+     * Tunes the fetch size of every query from the width of its first rows, see {@link AdaptiveFetchSize}
+     *
+     * @param fetchSize tuner shared by all queries, null to disable
+     */
+    public void setAdaptiveFetchSize(AdaptiveFetchSize fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Captures the execution plan of new queries and reports full scans and temporary sorts, see {@link QueryPlans}
+     *
+     * @param plans plan capture, null to disable
+     */
+    public void setQueryPlans(QueryPlans plans) {
+        this.plans = plans;
+    }
+
+    /**
+     * Prepares a statement with its deadline, fetch size tuner and limiter, which grants a slot once the statement is
+     * executed and takes it back when the statement is released
+     *
+     * @param preparation prepares the statement
+     * @return PreparedStatementBuilder
+     */
+    private PreparedStatementBuilder guarded(Supplier<PreparedStatementBuilder> preparation) {
+        var deadline = Deadline.current().orElse(null);
+        if (defaultTimeout != null) {
+            deadline = Deadline.after(defaultTimeout).earliest(deadline);
+        }
+        if (deadline != null && deadline.isExpired()) {
+            throw new QueryTimeoutException("Deadline passed before the statement was prepared");
+        }
+        return configure(preparation.get().limiter(limiter), deadline);
+    }
+
+    /**
+     * Applies the statement settings of this data access
+     *
+     * @param builder  prepared statement
+     * @param deadline deadline of the statement, may be null
+     * @return the same builder
+     */
+    private PreparedStatementBuilder configure(PreparedStatementBuilder builder, Deadline deadline) {
+        builder.deadline(deadline);
+        var capture = plans;
+        if (capture != null) {
+            builder.explain(capture, dialect());
+        }
+        var tuner = fetchSize;
+        return tuner == null ? builder : builder.adaptiveFetchSize(tuner);
+    }
+
+    /**
+     * Acquires a limiter slot for work not bound to a single statement
+     *
+     * @return permit to close once the work completes, null if calls are not limited
+     */
+    private ConcurrencyLimiter.Permit permit() {
+        var current = limiter;
+        return current == null ? null : current.acquire();
+    }
+
+    /**
+     * Returns a permit to the limiter
+     *
+     * @param permit permit taken by {@link #permit()}, may be null
+     */
+    private static void close(ConcurrencyLimiter.Permit permit) {
+        if (permit != null) {
+            permit.close();
+        }
+    }
+
+    /**
+     * Returns the dialect of the database, detected from the connection metadata on first use
+     *
+     * @return Dialect
+     */
+    public Dialect dialect() {
+        var current = dialect;
+        if (current == null) {
+            current = Dialect.detect(getConnection());
+            dialect = current;
+        }
+        return current;
+    }
+
+    /**
+     * Overrides the detected dialect
+     *
+     * @param dialect dialect to use
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    /**
+     * Inserts records in bulk with the fastest mechanism of the dialect, like multi-row VALUES or COPY, in a single
+     * transaction. Table is the record class name in lowercase and columns are the record components
+     *
+     * @param recordClass record class
+     * @param records     records to insert
+     * @param <T>         record type
+     * @return number of inserted rows
+     */
+    public <T extends Record> long insertAll(Class<T> recordClass, Collection<T> records) {
+        written(recordClass, records);
+        try {
+            return insertAll(recordClass.getSimpleName().toLowerCase(), columns(recordClass), rows(recordClass, records));
+        } finally {
+            written(recordClass, records);
+        }
+    }
+
+    /**
+     * Inserts rows in bulk with the fastest mechanism of the dialect in a single transaction
+     *
+     * @param table   table name
+     * @param columns column names
+     * @param rows    values of each row, in column order
+     * @return number of inserted rows
+     */
+    public long insertAll(String table, String[] columns, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        var permit = permit();
+        try {
+            return dialect().insertAll(getConnection(), table, columns, rows);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error inserting rows into " + table, ex);
+        } finally {
+            close(permit);
+        }
+    }
+
+    /**
+     * Inserts records or updates the existing rows with the same key in chunked batches inside a single transaction,
+     * using {@code INSERT ... ON CONFLICT DO UPDATE} or {@code MERGE} depending on the dialect. Table is the record class
+     * name in lowercase and columns are the record components
+     *
+     * @param recordClass record class
+     * @param records     records to upsert
+     * @param keyColumns  columns of the unique key used to detect existing rows
+     * @param <T>         record type
+     * @return affected, inserted and updated counts, -1 for counts the driver does not report
+     */
+    public <T extends Record> UpsertResult upsertAll(Class<T> recordClass, Collection<T> records, String... keyColumns) {
+        if (keyColumns.length == 0) {
+            throw new DataAccessException("At least one key column is required");
+        }
+        if (records.isEmpty()) {
+            return new UpsertResult(0, 0, 0);
+        }
+        String table = recordClass.getSimpleName().toLowerCase();
+        written(recordClass, records);
+        var permit = permit();
+        try {
+            return dialect().upsertAll(getConnection(), table, columns(recordClass), keyColumns, rows(recordClass, records));
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error upserting rows into " + table, ex);
+        } finally {
+            close(permit);
+            written(recordClass, records);
+        }
+    }
+
+    /**
+     * Caches the records of a class by primary key for {@link #findByKey(Class, String, Object)}, replacing the previous
+     * cache of the class. Writes of the class through this DataAccess keep the cache up to date, see {@link NearCache}
+     *
+     * @param recordClass record class
+     * @param keyColumn   primary key column, also a record component
+     * @param maxEntries  maximum number of cached keys
+     * @param <T>         record type
+     * @return NearCache to configure and monitor
+     */
+    public <T extends Record> NearCache<T> nearCache(Class<T> recordClass, String keyColumn, int maxEntries) {
+        var cache = new NearCache<T>(keyColumn, maxEntries);
+        nearCaches.put(recordClass, cache);
+        return cache;
+    }
+
+    /**
+     * Returns the record with a key, from the near cache of the class when it is keyed by the same column.
+     * Table is the record class name in lowercase
+     *
+     * @param recordClass record class
+     * @param keyColumn   key column
+     * @param key         key value
+     * @param <T>         record type
+     * @return the record, empty if there is no row with the key
+     */
+    public <T extends Record> Optional<T> findByKey(Class<T> recordClass, String keyColumn, Object key) {
+        Supplier<Optional<T>> loader = () -> select(recordClass, builder -> builder.where(keyColumn, key)).findOne();
+        var cache = nearCache(recordClass, keyColumn);
+        return cache == null ? loader.get() : cache.get(key, loader);
+    }
+
+    /**
+     * Inserts a record and writes it through to the near cache of its class. Table is the record class name in
+     * lowercase and columns are the record components
+     *
+     * @param record record to insert
+     * @param <T>    record type
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Record> void insert(T record) {
+        var recordClass = (Class<T>) record.getClass();
+        insertAll(recordClass, List.of(record));
+        stored(recordClass, record);
+    }
+
+    /**
+     * Updates the row of a record by key and writes it through to the near cache of its class. Table is the record
+     * class name in lowercase and every other component updates the column with its name
+     *
+     * @param record    record with the new values
+     * @param keyColumn key column, also a record component
+     * @param <T>       record type
+     * @return number of updated rows
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Record> int update(T record, String keyColumn) {
+        var recordClass = (Class<T>) record.getClass();
+        var sql = new StringBuilder("UPDATE ").append(recordClass.getSimpleName().toLowerCase()).append(" SET ");
+        boolean first = true;
+        for (String column : columns(recordClass)) {
+            if (!column.equalsIgnoreCase(keyColumn)) {
+                sql.append(first ? "" : ", ").append(column).append(" = :").append(column);
+                first = false;
+            }
+        }
+        sql.append(" WHERE ").append(keyColumn).append(" = :").append(keyOf(record, keyColumn).getName());
+        written(recordClass, List.of(record));
+        int updated = 0;
+        try {
+            updated = query(sql.toString(), record).executeUpdate();
+        } finally {
+            if (updated > 0) {
+                stored(recordClass, record);
+            } else {
+                written(recordClass, List.of(record));
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes the row with a key and evicts it from the near cache of the class. Table is the record class name in lowercase
+     *
+     * @param recordClass record class
+     * @param keyColumn   key column
+     * @param key         key value
+     * @param <T>         record type
+     * @return number of deleted rows
+     */
+    public <T extends Record> int delete(Class<T> recordClass, String keyColumn, Object key) {
+        deleted(recordClass, keyColumn, key);
+        String sql = "DELETE FROM " + recordClass.getSimpleName().toLowerCase() + " WHERE " + keyColumn + " = ?";
+        try {
+            return query(sql).setObject(key).executeUpdate();
+        } finally {
+            deleted(recordClass, keyColumn, key);
+        }
+    }
+
+    /**
+     * Returns the near cache of a class when it is keyed by a column
+     *
+     * @param recordClass record class
+     * @param keyColumn   key column
+     * @param <T>         record type
+     * @return the cache, null if the class has no cache by that column
+     */
+    @SuppressWarnings("unchecked")
+    private <T> NearCache<T> nearCache(Class<T> recordClass, String keyColumn) {
+        var cache = (NearCache<T>) nearCaches.get(recordClass);
+        return cache != null && cache.keyColumn().equalsIgnoreCase(keyColumn) ? cache : null;
+    }
+
+    /**
+     * Evicts the key of a deleted row from the near cache of its class, the whole cache when it is keyed by another column
+     *
+     * @param recordClass record class
+     * @param keyColumn   key column of the delete
+     * @param key         key value
+     */
+    private void deleted(Class<?> recordClass, String keyColumn, Object key) {
+        var cache = nearCaches.get(recordClass);
+        if (cache != null) {
+            if (cache.keyColumn().equalsIgnoreCase(keyColumn)) {
+                cache.invalidate(key);
+            } else {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Evicts written records from the near cache of their class. Called before and after the write: a lookup that
+     * starts in between may read the old row, the second eviction bumps the cache generation so that row is not cached
+     *
+     * @param recordClass record class
+     * @param records     records written
+     */
+    private void written(Class<?> recordClass, Collection<? extends Record> records) {
+        var cache = nearCaches.get(recordClass);
+        if (cache != null) {
+            for (var record : records) {
+                cache.invalidate(Records.value(record, keyOf(record, cache.keyColumn())));
+            }
+        }
+    }
+
+    /**
+     * Writes a stored record through to the near cache of its class
+     *
+     * @param recordClass record class
+     * @param record      stored record
+     * @param <T>         record type
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Record> void stored(Class<T> recordClass, T record) {
+        var cache = (NearCache<T>) nearCaches.get(recordClass);
+        if (cache != null) {
+            cache.put(Records.value(record, keyOf(record, cache.keyColumn())), record);
+        }
+    }
+
+    /**
+     * Finds the component of a record read from a column
+     *
+     * @param record record
+     * @param column column name, case insensitive
+     * @return record component
+     */
+    private static RecordComponent keyOf(Record record, String column) {
+        for (var component : Records.components(record.getClass())) {
+            if (component.getName().equalsIgnoreCase(column)) {
+                return component;
+            }
+        }
+        throw new DataAccessException("Record " + record.getClass().getSimpleName() + " has no component " + column);
+    }
+
+    /**
+     * Column names of a record class, its component names
+     *
+     * @param recordClass record class
+     * @return column names
+     */
+    private static String[] columns(Class<? extends Record> recordClass) {
+        var components = Records.components(recordClass);
+        String[] columns = new String[components.length];
+        for (int i = 0; i < components.length; i++) {
+            columns[i] = components[i].getName();
+        }
+        return columns;
+    }
+
+    /**
+     * Parameter values of each record in component order
+     *
+     * @param recordClass record class
+     * @param records     records
+     * @param <T>         record type
+     * @return values of each row
+     */
+    private static <T extends Record> List<Object[]> rows(Class<T> recordClass, Collection<T> records) {
+        List<Object[]> rows = new ArrayList<>(records.size());
+        for (T record : records) {
+            rows.add(Records.parameters(record));
+        }
+        return rows;
+    }
+
     /**
      * Starts a query builder with all columns for a SELECT statement
      *
@@ -88,6 +566,128 @@ public class DataAccess implements ConnectionWrapper {
         return new QueryBuilder("SELECT " + cols + " FROM " + table);
     }
 
+    /**
+     * Starts a lookup of the rows matching a large collection of keys, see {@link KeySetQuery}
+     *
+     * @param table     table name
+     * @param keyColumn column matched against the keys
+     * @param keys      keys to look up
+     * @param <K>       key type
+     * @return KeySetQuery
+     */
+    public <K> KeySetQuery<K> selectByKeys(String table, String keyColumn, Iterable<K> keys) {
+        return new KeySetQuery<>(this, table, keyColumn, keys);
+    }
+
+    /**
+     * Starts an incremental loader of the rows of a record class changed since the last poll, see {@link WatermarkLoader}
+     *
+     * @param recordClass     record class, its table is the class name in lowercase
+     * @param watermarkColumn monotonic column, such as an update timestamp or version
+     * @param keyColumn       unique, non null column breaking ties in the watermark
+     * @param <T>             record type
+     * @return WatermarkLoader
+     */
+    public <T extends Record> WatermarkLoader<T> watermarkLoader(Class<T> recordClass, String watermarkColumn, String keyColumn) {
+        String table = recordClass.getSimpleName().toLowerCase();
+        return watermarkLoader(table, watermarkColumn, keyColumn, PreparedStatementBuilder.recordMapper(recordClass));
+    }
+
+    /**
+     * Starts an incremental loader of the rows of a table changed since the last poll, see {@link WatermarkLoader}
+     *
+     * @param table           table name
+     * @param watermarkColumn monotonic column, such as an update timestamp or version
+     * @param keyColumn       unique, non null column breaking ties in the watermark
+     * @param mapper          row mapper
+     * @param <T>             row type
+     * @return WatermarkLoader
+     */
+    public <T> WatermarkLoader<T> watermarkLoader(String table, String watermarkColumn, String keyColumn, Function<ResultSetWrapper, T> mapper) {
+        return new WatermarkLoader<>(this, table, watermarkColumn, keyColumn, mapper);
+    }
+
+    /**
+     * Keeps a whole table of a record class in memory indexed by key, see {@link ReferenceTable}
+     *
+     * @param recordClass record class, its table is the class name in lowercase
+     * @param keyOf       key of a record
+     * @param <K>         key type
+     * @param <T>         record type
+     * @return ReferenceTable, loaded on first use
+     */
+    public <K, T extends Record> ReferenceTable<K, T> referenceTable(Class<T> recordClass, Function<? super T, ? extends K> keyOf) {
+        return new ReferenceTable<>(() -> select(recordClass).list(), keyOf);
+    }
+
+    /**
+     * Keeps the rows of a query in memory indexed by key, see {@link ReferenceTable}
+     *
+     * @param query creates the query reading every row, called on each refresh
+     * @param keyOf key of a row
+     * @param <K>   key type
+     * @param <T>   row type
+     * @return ReferenceTable, loaded on first use
+     */
+    public <K, T> ReferenceTable<K, T> referenceTable(Supplier<PreparedStatementExecutor<T>> query, Function<? super T, ? extends K> keyOf) {
+        return new ReferenceTable<>(() -> query.get().list(), keyOf);
+    }
+
+    /**
+     * Prepares the registered statements on the connections, builds the record mappers and runs the dry runs in
+     * parallel, see {@link WarmUp}. Meant to be called at startup before serving requests
+     *
+     * @param warmUp statements and record classes to warm up
+     * @return report with the time taken and the failed steps
+     */
+    public WarmUp.Report warmUp(WarmUp warmUp) {
+        return warmUp.run(this);
+    }
+
+    /**
+     * Exports a query split in partitions, each partition runs on its own connection and thread and is written to its own file.
+     * Partition queries usually filter by a modulo or a key range, e.g. {@code WHERE id % 4 = ?}
+     *
+     * @param partitions     number of partitions, also the number of threads used
+     * @param partitionQuery creates the query for a partition index, called from the partition thread
+     * @param target         file for a partition index, it is created or truncated
+     * @param options        export options
+     * @return total number of rows written
+     * @throws IllegalArgumentException if there is not at least one partition
+     */
+    public long exportPartitioned(int partitions, IntFunction<PreparedStatementBuilder> partitionQuery, IntFunction<Path> target, ExportOptions options) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is required");
+        }
+        var executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                futures.add(executor.submit(() -> {
+                    try (var channel = FileChannel.open(target.apply(partition), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        return partitionQuery.apply(partition).export(channel, options);
+                    }
+                }));
+            }
+            long total = 0;
+            for (var future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while exporting partitions", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof DataAccessException dae) {
+                throw dae;
+            }
+            throw new DataAccessException("Error exporting partition", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Query builder helps to build SQL queries in a fluent way
      */
@@ -118,6 +718,17 @@ public class DataAccess implements ConnectionWrapper {
             return QueryBuilder.this;
         }
 
+        /**
+         * Adds a WHERE clause to the query with any condition, like {@link Condition#in(String, java.util.Collection)}
+         *
+         * @param condition Condition to filter by
+         * @return QueryBuilder instance for chaining
+         */
+        public QueryBuilder where(Condition condition) {
+            sql.append(" WHERE ");
+            return add(condition);
+        }
+
         /**
          * Adds a condition to the query
          *
@@ -125,8 +736,7 @@ public class DataAccess implements ConnectionWrapper {
          * @return QueryBuilder instance for chaining
          */
         private QueryBuilder add(Condition condition) {
-            sql.append(condition.column()).append(" ").append(condition.operator()).append(" ?");
-            indexParameters.put(index++, condition.value());
+            index = condition.appendTo(sql, indexParameters, index);
             return QueryBuilder.this;
         }
 
@@ -240,6 +850,30 @@ public class DataAccess implements ConnectionWrapper {
             return orderBy(false, columns);
         }
 
+        /**
+         * Limits the number of rows returned using the pagination syntax of the dialect
+         *
+         * @param limit maximum number of rows
+         * @return QueryBuilder instance for chaining
+         */
+        public QueryBuilder limit(long limit) {
+            return limit(limit, 0);
+        }
+
+        /**
+         * Returns a page of rows using the pagination syntax of the dialect, should be the last clause added
+         *
+         * @param limit  maximum number of rows
+         * @param offset number of rows to skip
+         * @return QueryBuilder instance for chaining
+         */
+        public QueryBuilder limit(long limit, long offset) {
+            String paged = dialect().limit(sql.toString(), limit, offset);
+            sql.setLength(0);
+            sql.append(paged);
+            return QueryBuilder.this;
+        }
+
         /**
          * Appends additional SQL to the query
          *
@@ -0,0 +1,102 @@
+package net.vjdv.quickquery;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Point in time by which database work must complete. A deadline set with {@link #call(Deadline, Supplier)} applies to
+ * every statement prepared by a {@link DataAccess} on the same thread, so a request deadline reaches all the queries
+ * run on its behalf. Statements get it as query timeout and are cancelled if it passes while rows are being read
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private final long nanos;
+
+    private Deadline(long nanos) {
+        this.nanos = nanos;
+    }
+
+    /**
+     * Creates a deadline after a duration from now
+     *
+     * @param timeout time from now
+     * @return Deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * Returns the deadline propagated to the current thread
+     *
+     * @return the deadline, empty when none is set
+     */
+    public static Optional<Deadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Runs work with a deadline propagated to the statements it prepares. A deadline already set on the thread is kept if
+     * it is earlier
+     *
+     * @param deadline deadline of the work
+     * @param work     work to run
+     * @param <T>      type of the result
+     * @return result of the work
+     */
+    public static <T> T call(Deadline deadline, Supplier<T> work) {
+        var previous = CURRENT.get();
+        CURRENT.set(deadline.earliest(previous));
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs work with a deadline propagated to the statements it prepares, see {@link #call(Deadline, Supplier)}
+     *
+     * @param deadline deadline of the work
+     * @param work     work to run
+     */
+    public static void run(Deadline deadline, Runnable work) {
+        call(deadline, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Time left until the deadline
+     *
+     * @return remaining time, negative when expired
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(nanos - System.nanoTime());
+    }
+
+    /**
+     * Whether the deadline has passed
+     *
+     * @return true if expired
+     */
+    public boolean isExpired() {
+        return nanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Returns the earlier of two deadlines
+     *
+     * @param other another deadline, may be null
+     * @return the earliest deadline
+     */
+    public Deadline earliest(Deadline other) {
+        return other == null || nanos - other.nanos <= 0 ? this : other;
+    }
+}
@@ -0,0 +1,148 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Database specific SQL and bulk mechanisms. The dialect of a {@link DataAccess} is detected from
+ * {@link java.sql.DatabaseMetaData#getDatabaseProductName()}; dialects registered as {@link ServiceLoader} providers
+ * are checked before the built-in ones, and {@link GenericDialect} with plain JDBC batching is the fallback
+ */
+public interface Dialect {
+
+    /**
+     * Name of the dialect
+     *
+     * @return dialect name
+     */
+    String name();
+
+    /**
+     * Whether this dialect handles a database product
+     *
+     * @param productName product name reported by the driver metadata
+     * @return true if the dialect applies
+     */
+    boolean supports(String productName);
+
+    /**
+     * Adds pagination to a query
+     *
+     * @param sql    query without pagination
+     * @param limit  maximum number of rows
+     * @param offset number of rows to skip
+     * @return paginated query
+     */
+    String limit(String sql, long limit, long offset);
+
+    /**
+     * Builds the statement returning the execution plan of a query, one plan line per row in its last column
+     *
+     * @param sql query with its parameter placeholders
+     * @return EXPLAIN statement
+     */
+    default String explain(String sql) {
+        return "EXPLAIN " + sql;
+    }
+
+    /**
+     * Inserts rows using the fastest mechanism of the database
+     *
+     * @param conn    connection, its auto-commit mode is restored afterwards
+     * @param table   table name
+     * @param columns column names
+     * @param rows    values of each row, in column order
+     * @return number of inserted rows
+     * @throws SQLException if the insert fails
+     */
+    long insertAll(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException;
+
+    /**
+     * Builds a single row statement inserting a row or updating the existing row with the same key
+     *
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key used to detect existing rows
+     * @return upsert statement with a placeholder per column
+     */
+    String upsertSql(String table, String[] columns, String[] keyColumns);
+
+    /**
+     * Inserts rows or updates the existing rows with the same key, in chunked batches
+     *
+     * @param conn       connection, its auto-commit mode is restored afterwards
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key used to detect existing rows
+     * @param rows       values of each row, in column order
+     * @return aggregate counts
+     * @throws SQLException if the upsert fails
+     */
+    UpsertResult upsertAll(Connection conn, String table, String[] columns, String[] keyColumns, List<Object[]> rows) throws SQLException;
+
+    /**
+     * Dialect for SQLite, inserts with multi-row VALUES statements
+     *
+     * @return SQLite dialect
+     */
+    static Dialect sqlite() {
+        return new SqliteDialect();
+    }
+
+    /**
+     * Dialect for PostgreSQL, inserts with COPY when the PostgreSQL driver is available
+     *
+     * @return PostgreSQL dialect
+     */
+    static Dialect postgres() {
+        return new PostgresDialect();
+    }
+
+    /**
+     * Dialect for H2, inserts with multi-row VALUES statements
+     *
+     * @return H2 dialect
+     */
+    static Dialect h2() {
+        return new H2Dialect();
+    }
+
+    /**
+     * Standard SQL dialect using JDBC batches
+     *
+     * @return generic dialect
+     */
+    static Dialect generic() {
+        return new GenericDialect();
+    }
+
+    /**
+     * Detects the dialect of a connection
+     *
+     * @param conn connection
+     * @return the first registered or built-in dialect supporting the database, the generic dialect otherwise
+     */
+    static Dialect detect(Connection conn) {
+        String product;
+        try {
+            product = conn.getMetaData().getDatabaseProductName();
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error reading database metadata", ex);
+        }
+        for (var dialect : ServiceLoader.load(Dialect.class)) {
+            if (dialect.supports(product)) {
+                return dialect;
+            }
+        }
+        for (var dialect : List.of(sqlite(), postgres(), h2())) {
+            if (dialect.supports(product)) {
+                return dialect;
+            }
+        }
+        return generic();
+    }
+}
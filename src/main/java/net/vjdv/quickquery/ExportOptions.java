@@ -0,0 +1,140 @@
+package net.vjdv.quickquery;
+
+/**
+ * Options for exporting query results straight from the ResultSet as CSV or JSON lines
+ */
+public class ExportOptions {
+    private final Format format;
+    private String[] columns;
+    private boolean header = true;
+    private char delimiter = ',';
+    private int flushEvery = 0;
+    private int bufferSize = 64 * 1024;
+
+    /**
+     * Output formats supported by the exporter
+     */
+    public enum Format {
+        /**
+         * Comma separated values, RFC 4180 quoting
+         */
+        CSV,
+        /**
+         * One JSON object per line
+         */
+        JSON_LINES
+    }
+
+    /**
+     * Creates a new instance of ExportOptions
+     *
+     * @param format output format
+     */
+    public ExportOptions(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Creates options for CSV output with header and comma delimiter
+     *
+     * @return ExportOptions for CSV
+     */
+    public static ExportOptions csv() {
+        return new ExportOptions(Format.CSV);
+    }
+
+    /**
+     * Creates options for JSON lines output
+     *
+     * @return ExportOptions for JSON lines
+     */
+    public static ExportOptions jsonLines() {
+        return new ExportOptions(Format.JSON_LINES);
+    }
+
+    /**
+     * Exports only the given columns in the given order, by default all columns are exported
+     *
+     * @param columns column labels
+     * @return same ExportOptions instance
+     */
+    public ExportOptions columns(String... columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /**
+     * Writes the column labels as first line, only used for CSV
+     *
+     * @param header true to write the header
+     * @return same ExportOptions instance
+     */
+    public ExportOptions header(boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Sets the field delimiter, only used for CSV. It is written as a single byte so it must be an ASCII character
+     *
+     * @param delimiter the delimiter character
+     * @return same ExportOptions instance
+     * @throws IllegalArgumentException if the delimiter is not ASCII
+     */
+    public ExportOptions delimiter(char delimiter) {
+        if (delimiter > 0x7F) {
+            throw new IllegalArgumentException("Delimiter must be an ASCII character");
+        }
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Flushes the output every given number of rows, 0 to flush only when the buffer is full and at the end
+     *
+     * @param rows number of rows between flushes
+     * @return same ExportOptions instance
+     */
+    public ExportOptions flushEvery(int rows) {
+        this.flushEvery = rows;
+        return this;
+    }
+
+    /**
+     * Sets the size in bytes of the reused encoding buffer
+     *
+     * @param bytes buffer size
+     * @return same ExportOptions instance
+     */
+    public ExportOptions bufferSize(int bytes) {
+        if (bytes < 16) {
+            throw new IllegalArgumentException("Buffer size must be at least 16 bytes");
+        }
+        this.bufferSize = bytes;
+        return this;
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    String[] getColumns() {
+        return columns;
+    }
+
+    boolean isHeader() {
+        return header;
+    }
+
+    char getDelimiter() {
+        return delimiter;
+    }
+
+    int getFlushEvery() {
+        return flushEvery;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+}
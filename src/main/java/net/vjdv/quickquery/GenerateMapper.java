@@ -0,0 +1,19 @@
+package net.vjdv.quickquery;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record to get a {@link RecordMapper} generated at compile time by the quickquery-processor annotation
+ * processor. The generated class is used automatically by {@code resultMapper(Class)} and the record based writes;
+ * without the processor on the compiler path the record is mapped with reflection as before. The record and its
+ * enclosing classes must not be private
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+}
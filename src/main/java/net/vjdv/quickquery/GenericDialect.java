@@ -0,0 +1,271 @@
+package net.vjdv.quickquery;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Standard SQL dialect, inserts with JDBC batches of a single row statement. Base class of the built-in dialects,
+ * custom dialects can extend it and reuse its insert strategies
+ */
+public class GenericDialect implements Dialect {
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Creates a new instance of GenericDialect
+     */
+    public GenericDialect() {
+    }
+
+    @Override
+    public String name() {
+        return "generic";
+    }
+
+    /**
+     * The generic dialect is only used as fallback
+     *
+     * @param productName product name reported by the driver metadata
+     * @return false
+     */
+    @Override
+    public boolean supports(String productName) {
+        return false;
+    }
+
+    @Override
+    public String limit(String sql, long limit, long offset) {
+        return sql + " OFFSET " + offset + " ROWS FETCH NEXT " + limit + " ROWS ONLY";
+    }
+
+    @Override
+    public long insertAll(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        return inTransaction(conn, () -> batchInsert(conn, table, columns, rows));
+    }
+
+    /**
+     * Builds a standard {@code MERGE} statement using a single row VALUES source
+     *
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key used to detect existing rows
+     * @return MERGE statement
+     */
+    @Override
+    public String upsertSql(String table, String[] columns, String[] keyColumns) {
+        var keys = List.of(keyColumns);
+        var sql = new StringBuilder("MERGE INTO ").append(table).append(" t USING (VALUES (")
+                .append("?, ".repeat(columns.length - 1)).append("?)) AS s (").append(String.join(", ", columns)).append(") ON ");
+        for (int i = 0; i < keyColumns.length; i++) {
+            sql.append(i == 0 ? "" : " AND ").append("t.").append(keyColumns[i]).append(" = s.").append(keyColumns[i]);
+        }
+        var updates = new StringBuilder();
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                updates.append(updates.isEmpty() ? "" : ", ").append(column).append(" = s.").append(column);
+            }
+        }
+        if (!updates.isEmpty()) {
+            sql.append(" WHEN MATCHED THEN UPDATE SET ").append(updates);
+        }
+        sql.append(" WHEN NOT MATCHED THEN INSERT (").append(String.join(", ", columns)).append(") VALUES (s.")
+                .append(String.join(", s.", columns)).append(")");
+        return sql.toString();
+    }
+
+    /**
+     * Runs the upsert statement in JDBC batches, only the affected count is reported
+     *
+     * @param conn       connection
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key used to detect existing rows
+     * @param rows       values of each row
+     * @return affected count, inserted and updated unknown
+     * @throws SQLException if the upsert fails
+     */
+    @Override
+    public UpsertResult upsertAll(Connection conn, String table, String[] columns, String[] keyColumns, List<Object[]> rows) throws SQLException {
+        long affected = inTransaction(conn, () -> batch(conn, upsertSql(table, columns, keyColumns), columns.length, rows));
+        return new UpsertResult(affected, -1, -1);
+    }
+
+    /**
+     * Inserts rows with a single row statement sent in JDBC batches
+     *
+     * @param conn    connection
+     * @param table   table name
+     * @param columns column names
+     * @param rows    values of each row
+     * @return number of inserted rows
+     * @throws SQLException if the insert fails
+     */
+    protected long batchInsert(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        batch(conn, insertSql(table, columns, 1), columns.length, rows);
+        return rows.size();
+    }
+
+    /**
+     * Runs a single row statement for every row in JDBC batches of bounded size
+     *
+     * @param conn    connection
+     * @param sql     statement with a placeholder per column
+     * @param columns number of columns
+     * @param rows    values of each row
+     * @return sum of the update counts, -1 if the driver did not report them
+     * @throws SQLException if a batch fails
+     */
+    protected static long batch(Connection conn, String sql, int columns, List<Object[]> rows) throws SQLException {
+        long affected = 0;
+        try (var stmt = conn.prepareStatement(sql)) {
+            for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+                for (Object[] row : rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE))) {
+                    for (int i = 0; i < columns; i++) {
+                        PreparedStatementBuilder.bind(conn, stmt, i + 1, row[i]);
+                    }
+                    stmt.addBatch();
+                }
+                for (int count : stmt.executeBatch()) {
+                    if (count < 0 || affected < 0) {
+                        affected = -1;
+                    } else {
+                        affected += count;
+                    }
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Builds an {@code INSERT ... ON CONFLICT} statement, used by SQLite and PostgreSQL
+     *
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key
+     * @param rows       number of rows of placeholders
+     * @return upsert statement
+     */
+    protected static String onConflictSql(String table, String[] columns, String[] keyColumns, int rows) {
+        var keys = List.of(keyColumns);
+        var updates = new StringBuilder();
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                updates.append(updates.isEmpty() ? "" : ", ").append(column).append(" = excluded.").append(column);
+            }
+        }
+        return insertSql(table, columns, rows) + " ON CONFLICT (" + String.join(", ", keyColumns) + ") DO "
+                + (updates.isEmpty() ? "NOTHING" : "UPDATE SET " + updates);
+    }
+
+    /**
+     * Inserts rows with multi-row VALUES statements, as many rows per statement as the parameter limit allows.
+     * Full chunks reuse one prepared statement, the remainder uses another
+     *
+     * @param conn          connection
+     * @param table         table name
+     * @param columns       column names
+     * @param rows          values of each row
+     * @param maxParameters maximum number of parameters in a statement
+     * @return number of inserted rows
+     * @throws SQLException if the insert fails
+     */
+    protected long multiRowInsert(Connection conn, String table, String[] columns, List<Object[]> rows, int maxParameters) throws SQLException {
+        int perStatement = Math.max(1, Math.min(BATCH_SIZE, maxParameters / columns.length));
+        int full = rows.size() / perStatement * perStatement;
+        if (full > 0) {
+            try (var stmt = conn.prepareStatement(insertSql(table, columns, perStatement))) {
+                for (int from = 0; from < full; from += perStatement) {
+                    bindRows(conn, stmt, columns.length, rows.subList(from, from + perStatement));
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        if (full < rows.size()) {
+            try (var stmt = conn.prepareStatement(insertSql(table, columns, rows.size() - full))) {
+                bindRows(conn, stmt, columns.length, rows.subList(full, rows.size()));
+                stmt.executeUpdate();
+            }
+        }
+        return rows.size();
+    }
+
+    /**
+     * Builds an INSERT statement with the given number of rows of placeholders
+     *
+     * @param table   table name
+     * @param columns column names
+     * @param rows    number of rows
+     * @return INSERT statement
+     */
+    protected static String insertSql(String table, String[] columns, int rows) {
+        var sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        String placeholders = "(" + "?, ".repeat(columns.length - 1) + "?)";
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(placeholders);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Runs work in a single transaction when the connection is in auto-commit mode, rolling back on failure.
+     * Otherwise the work joins the transaction already in progress
+     *
+     * @param conn connection
+     * @param work work to run
+     * @param <R>  type of the result
+     * @return result of the work
+     * @throws SQLException if the work fails
+     */
+    protected static <R> R inTransaction(Connection conn, SqlWork<R> work) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            return work.run();
+        }
+        conn.setAutoCommit(false);
+        try {
+            R result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Binds consecutive rows to a multi-row statement
+     *
+     * @param conn    connection
+     * @param stmt    statement with a placeholder per value
+     * @param columns number of columns
+     * @param rows    rows to bind
+     * @throws SQLException if a value cannot be bound
+     */
+    protected static void bindRows(Connection conn, PreparedStatement stmt, int columns, List<Object[]> rows) throws SQLException {
+        int index = 1;
+        for (Object[] row : rows) {
+            for (int i = 0; i < columns; i++) {
+                PreparedStatementBuilder.bind(conn, stmt, index++, row[i]);
+            }
+        }
+    }
+
+    /**
+     * Database work that may throw SQLException
+     *
+     * @param <R> type of the result
+     */
+    @FunctionalInterface
+    protected interface SqlWork<R> {
+        /**
+         * Runs the work
+         *
+         * @return result
+         * @throws SQLException if the work fails
+         */
+        R run() throws SQLException;
+    }
+}
@@ -0,0 +1,32 @@
+package net.vjdv.quickquery;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * H2 dialect, inserts with multi-row VALUES statements inside a single transaction
+ */
+class H2Dialect extends GenericDialect {
+    private static final int MAX_PARAMETERS = 10_000;
+
+    @Override
+    public String name() {
+        return "h2";
+    }
+
+    @Override
+    public boolean supports(String productName) {
+        return "H2".equalsIgnoreCase(productName);
+    }
+
+    @Override
+    public String limit(String sql, long limit, long offset) {
+        return sql + " LIMIT " + limit + (offset > 0 ? " OFFSET " + offset : "");
+    }
+
+    @Override
+    public long insertAll(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        return inTransaction(conn, () -> multiRowInsert(conn, table, columns, rows, MAX_PARAMETERS));
+    }
+}
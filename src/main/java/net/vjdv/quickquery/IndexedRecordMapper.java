@@ -0,0 +1,49 @@
+package net.vjdv.quickquery;
+
+import java.util.function.Function;
+
+/**
+ * Adapts a {@link RecordMapper} to a row mapping function. The column indexes are resolved on the first row of each
+ * result set and reused for the following rows, so the same function can serve repeated executions of a query and
+ * rows buffered for parallel mapping
+ *
+ * @param <T> record type
+ */
+final class IndexedRecordMapper<T> implements Function<ResultSetWrapper, T> {
+    private final RecordMapper<T> mapper;
+    private volatile Resolved resolved;
+
+    /**
+     * Creates a new instance of IndexedRecordMapper
+     *
+     * @param mapper generated mapper
+     */
+    IndexedRecordMapper(RecordMapper<T> mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public T apply(ResultSetWrapper rs) {
+        var current = resolved;
+        Object source = rs.source();
+        if (current == null || current.source() != source) {
+            String[] columns = mapper.columns();
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = rs.findColumn(columns[i]);
+            }
+            current = new Resolved(source, indexes);
+            resolved = current;
+        }
+        return mapper.map(rs, current.indexes());
+    }
+
+    /**
+     * Column indexes resolved for a result set
+     *
+     * @param source  result set or buffered layout the indexes belong to
+     * @param indexes index of each column of the mapper
+     */
+    private record Resolved(Object source, int[] indexes) {
+    }
+}
@@ -0,0 +1,137 @@
+package net.vjdv.quickquery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable map from primitive int keys to values, stored in parallel arrays with open addressing so keys are
+ * not boxed and a lookup is a few array reads. Built by {@link PreparedStatementExecutor#toIntIndex(String)}
+ *
+ * @param <T> type of the values
+ */
+public final class IntIndex<T> {
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Creates an empty index
+     *
+     * @param expectedSize expected number of keys
+     */
+    IntIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Associates a value with a key while the index is built, a later value replaces an earlier one
+     *
+     * @param key   the key
+     * @param value the value, not null
+     */
+    void put(int key, T value) {
+        int slot = slot(key);
+        if (values[slot] == null) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Returns the value of a key
+     *
+     * @param key the key
+     * @return the value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int key) {
+        return (T) values[slot(key)];
+    }
+
+    /**
+     * Returns the value of a key or a default value
+     *
+     * @param key          the key
+     * @param defaultValue value returned when the key is not present
+     * @return the value
+     */
+    public T getOrDefault(int key, T defaultValue) {
+        T value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Returns whether a key is present
+     *
+     * @param key the key
+     * @return true if the index has a value for the key
+     */
+    public boolean containsKey(int key) {
+        return values[slot(key)] != null;
+    }
+
+    /**
+     * Returns the number of keys
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values in no particular order
+     *
+     * @return new list of values
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> values() {
+        List<T> list = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                list.add((T) value);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Finds the slot of a key, or the empty slot where it would be inserted
+     *
+     * @param key the key
+     * @return slot index
+     */
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity rehashing every entry
+     */
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fetches the rows matching a large collection of keys, either staging the keys in a session temporary table
+ * and joining against it, or splitting them in bounded IN chunks queried in parallel
+ *
+ * @param <K> key type
+ */
+public class KeySetQuery<K> {
+    private static final AtomicInteger TEMP_TABLES = new AtomicInteger();
+    private final DataAccess dataAccess;
+    private final String table;
+    private final String keyColumn;
+    private final List<K> keys;
+    private String[] columns = {"*"};
+    private Strategy strategy = Strategy.AUTO;
+    private int chunkSize = 512;
+    private int parallelism = 4;
+    private int tempTableThreshold = 10_000;
+
+    /**
+     * How the keys are sent to the database
+     */
+    public enum Strategy {
+        /**
+         * Chunked IN queries up to the temp table threshold, temporary table above it
+         */
+        AUTO,
+        /**
+         * Keys are inserted in batches into a temporary table on a single connection and joined with the table
+         */
+        TEMP_TABLE,
+        /**
+         * Keys are split in IN lists of bounded size queried in parallel, each chunk on its own connection
+         */
+        CHUNKED_IN
+    }
+
+    /**
+     * Creates a new instance of KeySetQuery
+     *
+     * @param dataAccess data access
+     * @param table      table name
+     * @param keyColumn  column matched against the keys
+     * @param keys       keys to look up, duplicates are ignored
+     */
+    KeySetQuery(DataAccess dataAccess, String table, String keyColumn, Iterable<K> keys) {
+        this.dataAccess = dataAccess;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        var distinct = new LinkedHashSet<K>();
+        keys.forEach(distinct::add);
+        this.keys = new ArrayList<>(distinct);
+    }
+
+    /**
+     * Selects only the given columns, by default all columns are selected
+     *
+     * @param columns columns to select
+     * @return same KeySetQuery instance
+     */
+    public KeySetQuery<K> columns(String... columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /**
+     * Sets how the keys are sent to the database, defaults to {@link Strategy#AUTO}
+     *
+     * @param strategy lookup strategy
+     * @return same KeySetQuery instance
+     */
+    public KeySetQuery<K> strategy(Strategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of keys in an IN chunk, defaults to 512
+     *
+     * @param chunkSize keys per chunk
+     * @return same KeySetQuery instance
+     */
+    public KeySetQuery<K> chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of chunks queried at the same time, defaults to 4
+     *
+     * @param parallelism number of threads and connections used for IN chunks
+     * @return same KeySetQuery instance
+     */
+    public KeySetQuery<K> parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the number of keys from which {@link Strategy#AUTO} uses a temporary table, defaults to 10000
+     *
+     * @param keys number of keys
+     * @return same KeySetQuery instance
+     */
+    public KeySetQuery<K> tempTableThreshold(int keys) {
+        this.tempTableThreshold = keys;
+        return this;
+    }
+
+    /**
+     * Returns the matching rows, the order of the rows is not defined
+     *
+     * @param function the function to map each row
+     * @param <T>      the type of the result
+     * @return list of items
+     */
+    public <T> List<T> list(Function<ResultSetWrapper, T> function) {
+        List<T> list = new ArrayList<>();
+        forEach(function, list::add);
+        return list;
+    }
+
+    /**
+     * Returns the matching rows mapped to a record, components name must match the column names
+     *
+     * @param clazz the record class
+     * @param <T>   the type of the record
+     * @return list of items
+     */
+    public <T> List<T> list(Class<T> clazz) {
+        return list(PreparedStatementBuilder.recordMapper(clazz));
+    }
+
+    /**
+     * Executes an action for each matching row as rows arrive, the consumer is never called concurrently
+     *
+     * @param function the function to map each row
+     * @param consumer action to execute
+     * @param <T>      the type of the result
+     */
+    public <T> void forEach(Function<ResultSetWrapper, T> function, Consumer<T> consumer) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        var chosen = strategy;
+        if (chosen == Strategy.AUTO) {
+            chosen = keys.size() > tempTableThreshold ? Strategy.TEMP_TABLE : Strategy.CHUNKED_IN;
+        }
+        if (chosen == Strategy.TEMP_TABLE) {
+            forEachTempTable(function, consumer);
+        } else {
+            forEachChunk(function, consumer);
+        }
+    }
+
+    /**
+     * Stages the keys in a temporary table and joins it with the table
+     *
+     * @param function the function to map each row
+     * @param consumer action to execute
+     * @param <T>      the type of the result
+     */
+    private <T> void forEachTempTable(Function<ResultSetWrapper, T> function, Consumer<T> consumer) {
+        Connection conn = dataAccess.getConnection();
+        ConnectionWrapper session = () -> conn;
+        String temp = "qq_keys_" + TEMP_TABLES.incrementAndGet();
+        String keyType = keys.get(0) instanceof Number ? "BIGINT" : "VARCHAR(255)";
+        session.query("CREATE TEMPORARY TABLE " + temp + " (k " + keyType + ")").execute();
+        try {
+            boolean autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            try {
+                try (var stmt = conn.prepareStatement("INSERT INTO " + temp + " (k) VALUES (?)")) {
+                    var insert = new PreparedStatementBuilder(conn, stmt);
+                    Map<Integer, Object> parameters = new HashMap<>();
+                    for (int i = 0; i < keys.size(); i++) {
+                        parameters.put(1, keys.get(i));
+                        insert.setParameters(parameters).addBatch();
+                        if ((i + 1) % 1000 == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                }
+                if (autoCommit) {
+                    conn.commit();
+                }
+            } finally {
+                if (autoCommit) {
+                    conn.setAutoCommit(true);
+                }
+            }
+            var cols = new StringBuilder();
+            for (String column : columns) {
+                cols.append(cols.isEmpty() ? "" : ", ").append("t.").append(column);
+            }
+            session.query("SELECT " + cols + " FROM " + table + " t JOIN " + temp + " k ON t." + keyColumn + " = k.k")
+                    .resultMapper(function)
+                    .forEach(consumer);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error staging keys in temporary table", ex);
+        } finally {
+            session.query("DROP TABLE " + temp).execute();
+        }
+    }
+
+    /**
+     * Splits the keys in IN chunks queried in parallel
+     *
+     * @param function the function to map each row
+     * @param consumer action to execute
+     * @param <T>      the type of the result
+     */
+    private <T> void forEachChunk(Function<ResultSetWrapper, T> function, Consumer<T> consumer) {
+        Consumer<T> serialized = item -> {
+            synchronized (this) {
+                consumer.accept(item);
+            }
+        };
+        var executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, (keys.size() + chunkSize - 1) / chunkSize)));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < keys.size(); from += chunkSize) {
+                var chunk = Collections.unmodifiableList(keys.subList(from, Math.min(keys.size(), from + chunkSize)));
+                futures.add(executor.submit(() -> dataAccess.select(table, columns)
+                        .where(Condition.in(keyColumn, chunk))
+                        .prepare()
+                        .resultMapper(function)
+                        .forEach(serialized)));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while querying key chunks", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof DataAccessException dae) {
+                throw dae;
+            }
+            throw new DataAccessException("Error querying key chunk", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
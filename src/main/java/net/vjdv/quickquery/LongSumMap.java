@@ -0,0 +1,189 @@
+package net.vjdv.quickquery;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to a running sum and count, stored in parallel primitive arrays with open addressing so
+ * neither keys nor values are boxed. Built by {@link RowCollectors}
+ */
+public final class LongSumMap {
+    private long[] keys;
+    private long[] sums;
+    private long[] counts;
+    private int size;
+
+    /**
+     * Receives each entry of the map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Performs this operation on an entry
+         *
+         * @param key   group key
+         * @param sum   sum of the values of the group
+         * @param count number of values in the group
+         */
+        void accept(long key, long sum, long count);
+    }
+
+    /**
+     * Creates an empty map
+     *
+     * @param expectedSize expected number of keys
+     */
+    LongSumMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        sums = new long[capacity];
+        counts = new long[capacity];
+    }
+
+    /**
+     * Adds a value to the group of a key
+     *
+     * @param key   group key
+     * @param value value to add
+     */
+    void add(long key, long value) {
+        add(key, value, 1);
+    }
+
+    /**
+     * Adds a partial sum and count to the group of a key
+     *
+     * @param key   group key
+     * @param sum   sum to add
+     * @param count count to add
+     */
+    private void add(long key, long sum, long count) {
+        int slot = slot(key);
+        if (counts[slot] == 0) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                counts[slot] = count;
+                sums[slot] = sum;
+                resize();
+                return;
+            }
+        }
+        sums[slot] += sum;
+        counts[slot] += count;
+    }
+
+    /**
+     * Adds every group of another map to this one
+     *
+     * @param other map to merge
+     * @return this map
+     */
+    LongSumMap merge(LongSumMap other) {
+        other.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Returns the sum of a group
+     *
+     * @param key group key
+     * @return sum of the group, 0 if the key is not present
+     */
+    public long sum(long key) {
+        return sums[slot(key)];
+    }
+
+    /**
+     * Returns the number of values added to a group
+     *
+     * @param key group key
+     * @return count of the group, 0 if the key is not present
+     */
+    public long count(long key) {
+        return counts[slot(key)];
+    }
+
+    /**
+     * Returns whether a group exists
+     *
+     * @param key group key
+     * @return true if at least one value was added for the key
+     */
+    public boolean containsKey(long key) {
+        return counts[slot(key)] != 0;
+    }
+
+    /**
+     * Returns the number of groups
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys in ascending order
+     *
+     * @return new array of keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] != 0) {
+                result[i++] = keys[slot];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Performs an action for each group, in no particular order
+     *
+     * @param consumer action to execute
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] != 0) {
+                consumer.accept(keys[slot], sums[slot], counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of a key, or the empty slot where it would be inserted
+     *
+     * @param key group key
+     * @return slot index
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity rehashing every group
+     */
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldSums = sums;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        sums = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                sums[slot] = oldSums[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
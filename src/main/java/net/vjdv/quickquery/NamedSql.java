@@ -0,0 +1,129 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL with {@code :name} parameters rewritten to positional placeholders. Parsed statements are cached per SQL string
+ * so the parse only happens the first time a statement is seen
+ */
+final class NamedSql {
+    private static final int CACHE_LIMIT = 2048;
+    private static final Map<String, NamedSql> CACHE = new ConcurrentHashMap<>();
+    private final String sql;
+    private final Map<String, int[]> indexes;
+
+    private NamedSql(String sql, Map<String, int[]> indexes) {
+        this.sql = sql;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns the parsed form of a SQL string, from cache when possible
+     *
+     * @param sql SQL with named parameters
+     * @return NamedSql
+     */
+    static NamedSql of(String sql) {
+        var cached = CACHE.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        var parsed = parse(sql);
+        if (CACHE.size() < CACHE_LIMIT) {
+            CACHE.putIfAbsent(sql, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * SQL with positional placeholders
+     *
+     * @return rewritten SQL
+     */
+    String sql() {
+        return sql;
+    }
+
+    /**
+     * Positional parameters for the given named values
+     *
+     * @param values values by parameter name
+     * @return values by parameter index
+     * @throws DataAccessException if a parameter has no value
+     */
+    Map<Integer, Object> parameters(Map<String, ?> values) {
+        Map<Integer, Object> parameters = new HashMap<>();
+        for (var entry : indexes.entrySet()) {
+            if (!values.containsKey(entry.getKey())) {
+                throw new DataAccessException("Missing value for parameter :" + entry.getKey());
+            }
+            Object value = values.get(entry.getKey());
+            for (int index : entry.getValue()) {
+                parameters.put(index, value);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Rewrites named parameters to placeholders, skipping string literals, quoted identifiers, comments and {@code ::} casts
+     *
+     * @param sql SQL with named parameters
+     * @return NamedSql
+     */
+    private static NamedSql parse(String sql) {
+        var out = new StringBuilder(sql.length());
+        Map<String, int[]> indexes = new LinkedHashMap<>();
+        int count = 0;
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                while (end != -1 && end + 1 < n && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                end = end == -1 ? n - 1 : end;
+                out.append(sql, i, end + 1);
+                i = end;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                end = end == -1 ? n - 1 : end;
+                out.append(sql, i, end + 1);
+                i = end;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end == -1 ? n - 1 : end + 1;
+                out.append(sql, i, end + 1);
+                i = end;
+            } else if (c == ':' && i + 1 < n && sql.charAt(i + 1) == ':') {
+                out.append("::");
+                i++;
+            } else if (c == ':' && i + 1 < n && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < n && Character.isJavaIdentifierPart(sql.charAt(end))) {
+                    end++;
+                }
+                String name = sql.substring(i + 1, end);
+                int[] previous = indexes.get(name);
+                int[] updated = previous == null ? new int[1] : Arrays.copyOf(previous, previous.length + 1);
+                updated[updated.length - 1] = ++count;
+                indexes.put(name, updated);
+                out.append('?');
+                i = end - 1;
+            } else {
+                if (c == '?') {
+                    count++;
+                }
+                out.append(c);
+            }
+        }
+        return new NamedSql(out.toString(), indexes);
+    }
+}
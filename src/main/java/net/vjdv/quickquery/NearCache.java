@@ -0,0 +1,206 @@
+package net.vjdv.quickquery;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least recently used cache of the records of a class by primary key, kept by a {@link DataAccess} for
+ * {@link DataAccess#findByKey(Class, String, Object)}. Records inserted, updated, upserted or deleted through the same
+ * DataAccess are written through or invalidated; changes made by other processes are only seen once an entry expires.
+ * Integral keys are compared by value whatever their boxed type
+ *
+ * @param <T> record type
+ */
+public class NearCache<T> {
+    private static final Object ABSENT = new Object();
+    private final String keyColumn;
+    private final int maxEntries;
+    private final Map<Object, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private boolean negativeCaching;
+    private long ttlNanos;
+    private long generation;
+
+    /**
+     * Creates a new instance of NearCache
+     *
+     * @param keyColumn  primary key column
+     * @param maxEntries maximum number of cached keys
+     */
+    NearCache(String keyColumn, int maxEntries) {
+        this.keyColumn = keyColumn;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                return size() > NearCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Also caches keys without a row, so repeated lookups of missing keys skip the database. Disabled by default
+     *
+     * @param negativeCaching true to cache missing keys
+     * @return same NearCache instance
+     */
+    public synchronized NearCache<T> negativeCaching(boolean negativeCaching) {
+        this.negativeCaching = negativeCaching;
+        return this;
+    }
+
+    /**
+     * Expires entries a time after they were cached, bounding staleness for changes made outside this DataAccess.
+     * Entries do not expire by default
+     *
+     * @param ttl time to live, null or zero to disable
+     * @return same NearCache instance
+     */
+    public synchronized NearCache<T> expireAfterWrite(Duration ttl) {
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        return this;
+    }
+
+    /**
+     * Primary key column of the cached records
+     *
+     * @return key column
+     */
+    public String keyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Number of lookups answered from the cache
+     *
+     * @return hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that went to the database
+     *
+     * @return misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Ratio of lookups answered from the cache
+     *
+     * @return hit rate between 0 and 1, 0 before any lookup
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Number of cached keys, including missing keys when negative caching is enabled
+     *
+     * @return cached keys
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes a key from the cache
+     *
+     * @param key primary key
+     */
+    public synchronized void invalidate(Object key) {
+        generation++;
+        entries.remove(normalize(key));
+    }
+
+    /**
+     * Removes every key from the cache
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * Returns the cached record or loads it. A load racing with a write of any key is not cached, so a record
+     * read before the write never replaces the written one
+     *
+     * @param key    primary key
+     * @param loader reads the record from the database
+     * @return the record, empty if there is no row with the key
+     */
+    Optional<T> get(Object key, Supplier<Optional<T>> loader) {
+        Object normalized = normalize(key);
+        long loadGeneration;
+        synchronized (this) {
+            var entry = entries.get(normalized);
+            if (entry != null && (ttlNanos == 0 || System.nanoTime() - entry.cachedAt < ttlNanos)) {
+                hits.increment();
+                return entry.value == ABSENT ? Optional.empty() : Optional.of(cast(entry.value));
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        var loaded = loader.get();
+        synchronized (this) {
+            if (generation == loadGeneration && (loaded.isPresent() || negativeCaching)) {
+                entries.put(normalized, new Entry(loaded.isPresent() ? loaded.get() : ABSENT, System.nanoTime()));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Writes a record through after it was stored
+     *
+     * @param key    primary key
+     * @param record stored record
+     */
+    synchronized void put(Object key, T record) {
+        generation++;
+        entries.put(normalize(key), new Entry(record, System.nanoTime()));
+    }
+
+    /**
+     * Casts a cached value
+     *
+     * @param value cached value
+     * @return the record
+     */
+    @SuppressWarnings("unchecked")
+    private T cast(Object value) {
+        return (T) value;
+    }
+
+    /**
+     * Makes integral keys of different boxed types equal
+     *
+     * @param key primary key
+     * @return normalized key
+     */
+    private static Object normalize(Object key) {
+        if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        return key;
+    }
+
+    /**
+     * Cached record or absent marker
+     *
+     * @param value    record or {@link #ABSENT}
+     * @param cachedAt when it was cached
+     */
+    private record Entry(Object value, long cachedAt) {
+    }
+}
@@ -0,0 +1,176 @@
+package net.vjdv.quickquery;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * PostgreSQL dialect, inserts with {@code COPY ... FROM STDIN} through the driver copy API, found by reflection so the
+ * driver is not a compile dependency. Falls back to multi-row VALUES statements when the API is not available.
+ * Upserts use multi-row {@code INSERT ... ON CONFLICT} statements returning whether each row was inserted
+ */
+class PostgresDialect extends GenericDialect {
+    private static final int MAX_PARAMETERS = 32_767;
+    private static final int COPY_CHUNK_ROWS = 10_000;
+
+    @Override
+    public String name() {
+        return "postgresql";
+    }
+
+    @Override
+    public boolean supports(String productName) {
+        return "PostgreSQL".equalsIgnoreCase(productName);
+    }
+
+    @Override
+    public String limit(String sql, long limit, long offset) {
+        return sql + " LIMIT " + limit + (offset > 0 ? " OFFSET " + offset : "");
+    }
+
+    @Override
+    public long insertAll(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        Object copyApi = copyApi(conn);
+        if (copyApi == null) {
+            return inTransaction(conn, () -> multiRowInsert(conn, table, columns, rows, MAX_PARAMETERS));
+        }
+        String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN";
+        return inTransaction(conn, () -> {
+            long copied = 0;
+            var text = new StringBuilder();
+            for (int from = 0; from < rows.size(); from += COPY_CHUNK_ROWS) {
+                text.setLength(0);
+                for (Object[] row : rows.subList(from, Math.min(rows.size(), from + COPY_CHUNK_ROWS))) {
+                    appendRow(text, row, columns.length);
+                }
+                copied += copyIn(copyApi, sql, text.toString());
+            }
+            return copied;
+        });
+    }
+
+    @Override
+    public String upsertSql(String table, String[] columns, String[] keyColumns) {
+        return onConflictSql(table, columns, keyColumns, 1);
+    }
+
+    /**
+     * Upserts in multi-row statements, {@code xmax = 0} in the returned rows tells inserted rows from updated ones.
+     * A key must not repeat within the rows of a statement
+     *
+     * @param conn       connection
+     * @param table      table name
+     * @param columns    column names, including the key columns
+     * @param keyColumns columns of the unique key used to detect existing rows
+     * @param rows       values of each row
+     * @return affected, inserted and updated counts
+     * @throws SQLException if the upsert fails
+     */
+    @Override
+    public UpsertResult upsertAll(Connection conn, String table, String[] columns, String[] keyColumns, List<Object[]> rows) throws SQLException {
+        int perStatement = Math.max(1, Math.min(1000, MAX_PARAMETERS / columns.length));
+        return inTransaction(conn, () -> {
+            long inserted = 0;
+            long updated = 0;
+            for (int from = 0; from < rows.size(); from += perStatement) {
+                var chunk = rows.subList(from, Math.min(rows.size(), from + perStatement));
+                String sql = onConflictSql(table, columns, keyColumns, chunk.size()) + " RETURNING (xmax = 0)";
+                try (var stmt = conn.prepareStatement(sql)) {
+                    bindRows(conn, stmt, columns.length, chunk);
+                    try (var rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (rs.getBoolean(1)) {
+                                inserted++;
+                            } else {
+                                updated++;
+                            }
+                        }
+                    }
+                }
+            }
+            return new UpsertResult(inserted + updated, inserted, updated);
+        });
+    }
+
+    /**
+     * Returns the CopyManager of a PostgreSQL connection
+     *
+     * @param conn connection
+     * @return CopyManager, or null if the PostgreSQL driver is not available
+     */
+    private static Object copyApi(Connection conn) {
+        try {
+            Class<?> pgConnection = Class.forName("org.postgresql.PGConnection", false, conn.getClass().getClassLoader());
+            if (!conn.isWrapperFor(pgConnection)) {
+                return null;
+            }
+            return pgConnection.getMethod("getCopyAPI").invoke(conn.unwrap(pgConnection));
+        } catch (ReflectiveOperationException | SQLException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends text format rows with {@code CopyManager.copyIn(String, Reader)}
+     *
+     * @param copyApi CopyManager
+     * @param sql     COPY statement
+     * @param text    rows in text format
+     * @return number of copied rows
+     * @throws SQLException if the copy fails
+     */
+    private static long copyIn(Object copyApi, String sql, String text) throws SQLException {
+        try {
+            Method copyIn = copyApi.getClass().getMethod("copyIn", String.class, Reader.class);
+            return (long) copyIn.invoke(copyApi, sql, new StringReader(text));
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof SQLException sqlEx) {
+                throw sqlEx;
+            }
+            throw new SQLException("Error copying rows", ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new SQLException("Error copying rows", ex);
+        }
+    }
+
+    /**
+     * Appends a row in COPY text format: tab separated, {@code \N} for NULL, backslash escapes and hex bytea
+     *
+     * @param text    buffer
+     * @param row     row values
+     * @param columns number of columns
+     */
+    private static void appendRow(StringBuilder text, Object[] row, int columns) {
+        for (int i = 0; i < columns; i++) {
+            if (i > 0) {
+                text.append('\t');
+            }
+            Object value = row[i];
+            if (value == null) {
+                text.append("\\N");
+            } else if (value instanceof byte[] bytes) {
+                text.append("\\\\x").append(HexFormat.of().formatHex(bytes));
+            } else if (value instanceof Boolean b) {
+                text.append(b ? 't' : 'f');
+            } else {
+                String s = value.toString();
+                for (int j = 0; j < s.length(); j++) {
+                    char c = s.charAt(j);
+                    switch (c) {
+                        case '\\' -> text.append("\\\\");
+                        case '\t' -> text.append("\\t");
+                        case '\n' -> text.append("\\n");
+                        case '\r' -> text.append("\\r");
+                        default -> text.append(c);
+                    }
+                }
+            }
+        }
+        text.append('\n');
+    }
+}
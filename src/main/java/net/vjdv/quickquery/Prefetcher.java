@@ -0,0 +1,188 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a scan on a background thread that reads and maps rows into batches, handed to the consuming thread through a
+ * bounded queue. The producer blocks when the queue is full, so memory stays within the configured buffers. Failures
+ * of the scan are rethrown to the consumer and closing before the end stops the scan, releasing the statement
+ *
+ * @param <T> type of the items
+ */
+final class Prefetcher<T> implements Iterator<T>, AutoCloseable {
+    private static final Object END = new Object();
+    private static final long POLL_MILLIS = 10;
+    private final BlockingQueue<Object> queue;
+    private final int batchRows;
+    private final Thread producer;
+    private volatile boolean closed;
+    private Iterator<T> current = Collections.emptyIterator();
+    private boolean finished;
+
+    /**
+     * Creates a new instance of Prefetcher and starts the scan
+     *
+     * @param scan      scan feeding every item to the given consumer
+     * @param batchRows items per batch
+     * @param buffers   filled batches the producer may get ahead of the consumer
+     */
+    Prefetcher(Consumer<Consumer<T>> scan, int batchRows, int buffers) {
+        this.queue = new ArrayBlockingQueue<>(buffers);
+        this.batchRows = batchRows;
+        this.producer = new Thread(() -> produce(scan), "quickquery-prefetch");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Body of the producer thread, the end of the scan or its failure is always the last element queued
+     *
+     * @param scan scan feeding every item to the given consumer
+     */
+    private void produce(Consumer<Consumer<T>> scan) {
+        var batch = new Object() {
+            List<T> items = new ArrayList<>(batchRows);
+        };
+        try {
+            scan.accept(item -> {
+                batch.items.add(item);
+                if (batch.items.size() == batchRows) {
+                    put(batch.items);
+                    batch.items = new ArrayList<>(batchRows);
+                }
+            });
+            if (!batch.items.isEmpty()) {
+                put(batch.items);
+            }
+            put(END);
+        } catch (Stop ex) {
+            //consumer closed
+        } catch (RuntimeException | Error ex) {
+            try {
+                put(new Failure(ex));
+            } catch (Stop stop) {
+                //consumer closed
+            }
+        }
+    }
+
+    /**
+     * Queues an element, waiting while the queue is full
+     *
+     * @param element batch, failure or end marker
+     * @throws Stop if the consumer closed
+     */
+    private void put(Object element) {
+        try {
+            do {
+                if (closed) {
+                    throw new Stop();
+                }
+            } while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new Stop();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            Object next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new DataAccessException("Interrupted while waiting for prefetched rows", ex);
+            }
+            if (next == END) {
+                finished = true;
+                awaitProducer();
+                return false;
+            } else if (next instanceof Failure failure) {
+                finished = true;
+                awaitProducer();
+                failure.rethrow();
+            }
+            current = ((List<T>) next).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops the scan if it is still running and waits until its statement is released
+     */
+    @Override
+    public void close() {
+        finished = true;
+        closed = true;
+        queue.clear();
+        awaitProducer();
+    }
+
+    /**
+     * Waits for the producer thread to end, an interrupt is restored afterwards
+     */
+    private void awaitProducer() {
+        boolean interrupted = false;
+        while (producer.isAlive()) {
+            try {
+                producer.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Failure of the scan, rethrown on the consumer thread
+     *
+     * @param cause exception thrown by the scan
+     */
+    private record Failure(Throwable cause) {
+        /**
+         * Rethrows the failure
+         */
+        void rethrow() {
+            if (cause instanceof RuntimeException ex) {
+                throw ex;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Thrown inside the producer to abort the scan once the consumer closed
+     */
+    private static final class Stop extends RuntimeException {
+        private Stop() {
+            super(null, null, false, false);
+        }
+    }
+}
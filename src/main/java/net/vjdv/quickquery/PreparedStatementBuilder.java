@@ -2,24 +2,56 @@ package net.vjdv.quickquery;
 
 import net.vjdv.quickquery.exceptions.DataAccessException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collector;
 
 /**
  * A builder class to create a PreparedStatement with parameters
  */
 public class PreparedStatementBuilder {
+    private static final ClassValue<Function<ResultSetWrapper, ?>> RECORD_MAPPERS = new ClassValue<>() {
+        @Override
+        protected Function<ResultSetWrapper, ?> computeValue(Class<?> type) {
+            return recordMapper(type, "");
+        }
+    };
     private final Connection conn;
     private final PreparedStatement stmt;
+    private final String sql;
+    private final List<AutoCloseable> attachments = new ArrayList<>();
     private int index = 1;
+    private Deadline deadline;
+    private StatementTimer timer;
+    private ConcurrencyLimiter limiter;
+    private AdaptiveFetchSize fetchSize;
+    private QueryPlans plans;
+    private Dialect dialect;
+    private Map<Integer, Object> parameters;
 
     /**
      * Create a PreparedStatementBuilder instance
@@ -27,8 +59,20 @@ public class PreparedStatementBuilder {
      * @param stmt the prepared statement to be used
      */
     public PreparedStatementBuilder(Connection conn, PreparedStatement stmt) {
+        this(conn, stmt, null);
+    }
+
+    /**
+     * Create a PreparedStatementBuilder instance that knows its SQL, used to remember per query settings
+     *
+     * @param conn the connection of the statement
+     * @param stmt the prepared statement to be used
+     * @param sql  the SQL of the statement
+     */
+    PreparedStatementBuilder(Connection conn, PreparedStatement stmt, String sql) {
         this.conn = conn;
         this.stmt = stmt;
+        this.sql = sql;
     }
 
     /**
@@ -55,6 +99,133 @@ public class PreparedStatementBuilder {
         return true;
     }
 
+    /**
+     * Registers a resource to be closed once the statement has been executed, like streams opened for parameters
+     *
+     * @param resource the resource to close after execution
+     */
+    void attach(AutoCloseable resource) {
+        attachments.add(resource);
+    }
+
+    /**
+     * Sets a timeout for this statement, applied as query timeout and enforced by cancelling the statement when it
+     * passes while rows are being read. An earlier deadline already set on the statement is kept
+     *
+     * @param timeout maximum time from now
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder timeout(Duration timeout) {
+        return deadline(Deadline.after(timeout));
+    }
+
+    /**
+     * Sets the deadline of this statement, an earlier deadline already set is kept
+     *
+     * @param deadline deadline, null for none
+     * @return same PreparedStatementBuilder instance
+     */
+    PreparedStatementBuilder deadline(Deadline deadline) {
+        if (deadline != null) {
+            this.deadline = deadline.earliest(this.deadline);
+        }
+        return this;
+    }
+
+    /**
+     * Limits the concurrency of the statement, a slot is taken when it is executed and returned once it completes
+     *
+     * @param limiter concurrency limiter, null for none
+     * @return same PreparedStatementBuilder instance
+     */
+    PreparedStatementBuilder limiter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * Tunes the fetch size of the query from the width of its first rows, see {@link AdaptiveFetchSize}
+     *
+     * @param fetchSize tuner, shared to reuse what it learned; null to disable
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder adaptiveFetchSize(AdaptiveFetchSize fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Captures the execution plan of the statement right before it is executed, see {@link QueryPlans}
+     *
+     * @param plans   plan capture, null to disable
+     * @param dialect dialect providing the EXPLAIN syntax
+     * @return same PreparedStatementBuilder instance
+     */
+    PreparedStatementBuilder explain(QueryPlans plans, Dialect dialect) {
+        this.plans = plans;
+        this.dialect = dialect;
+        this.parameters = plans == null ? null : new TreeMap<>();
+        return this;
+    }
+
+    /**
+     * Keeps a parameter value to bind it again to the EXPLAIN statement, only while plans are captured
+     *
+     * @param parameterIndex the parameter index
+     * @param value          the value, null for values that cannot be bound twice like streams
+     */
+    private void remember(int parameterIndex, Object value) {
+        if (parameters != null) {
+            parameters.put(parameterIndex, value);
+        }
+    }
+
+    /**
+     * Returns the timer enforcing the deadline, created on first use and closed with the attachments. It is created
+     * once the parameters are set and the statement is about to run, so the plan is captured here
+     *
+     * @return StatementTimer
+     */
+    private StatementTimer timer() {
+        if (timer == null) {
+            if (plans != null) {
+                var capture = plans.capture(conn, dialect, sql, parameters);
+                if (capture != null) {
+                    attach(capture);
+                }
+            }
+            timer = new StatementTimer(stmt, deadline, limiter);
+            attach(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Creates the executor of a result mapper, the statement is released once executed
+     *
+     * @param function the function to map the result
+     * @param <T>      the type of the result
+     * @return a PreparedStatementExecutor instance
+     */
+    private <T> PreparedStatementExecutor<T> executor(Function<ResultSetWrapper, T> function) {
+        return new PreparedStatementExecutor<>(stmt, function, this::release, timer()).adaptiveFetchSize(fetchSize, sql);
+    }
+
+    /**
+     * Closes the resources attached to this statement, errors are ignored since the statement already completed
+     */
+    void release() {
+        for (var resource : attachments) {
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // the statement has already been executed
+            }
+        }
+        attachments.clear();
+        timer = null;
+    }
+
     /**
      * Set an array parameter to consecutive parameter index
      *
@@ -74,6 +245,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setArray(Array value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setArray(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -101,6 +273,7 @@ public class PreparedStatementBuilder {
     public PreparedStatementBuilder setTextArray(String[] values, int parameterIndex) {
         try {
             Array array = conn.createArrayOf("text", values);
+            remember(parameterIndex, array);
             stmt.setArray(parameterIndex, array);
             return this;
         } catch (SQLException ex) {
@@ -127,6 +300,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setAsciiStream(java.io.InputStream value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setAsciiStream(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -153,6 +327,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setBigDecimal(java.math.BigDecimal value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setBigDecimal(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -179,6 +354,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setBinaryStream(java.io.InputStream value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setBinaryStream(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -205,6 +381,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setBlob(Blob value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setBlob(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -231,6 +408,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setBoolean(boolean value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setBoolean(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -257,6 +435,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setByte(byte value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setByte(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -283,6 +462,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setBytes(byte[] value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setBytes(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -290,6 +470,104 @@ public class PreparedStatementBuilder {
         }
     }
 
+    /**
+     * Set a byte buffer parameter to consecutive parameter index, bytes between position and limit are sent without consuming the buffer
+     *
+     * @param value the byte buffer value
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setByteBuffer(ByteBuffer value) {
+        return setByteBuffer(value, index++);
+    }
+
+    /**
+     * Set a byte buffer parameter to specific parameter index, bytes between position and limit are sent without consuming the buffer.
+     * Heap buffers wrapping a whole array are bound directly, any other buffer (e.g. direct buffers) is streamed to the driver without copying it into a byte array
+     *
+     * @param value          the byte buffer value
+     * @param parameterIndex the parameter index
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setByteBuffer(ByteBuffer value, int parameterIndex) {
+        if (value == null) {
+            return setNull(Types.BINARY, parameterIndex);
+        }
+        if (value.hasArray() && value.arrayOffset() == 0 && value.position() == 0 && value.limit() == value.array().length) {
+            return setBytes(value.array(), parameterIndex);
+        }
+        try {
+            remember(parameterIndex, null);
+            stmt.setBinaryStream(parameterIndex, new ByteBufferInputStream(value.duplicate()), value.remaining());
+            return this;
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error setting byte buffer parameter", ex);
+        }
+    }
+
+    /**
+     * Set a readable channel parameter to consecutive parameter index, the channel is read by the driver until end of stream
+     *
+     * @param value the channel to read from
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setChannel(ReadableByteChannel value) {
+        return setChannel(value, index++);
+    }
+
+    /**
+     * Set a readable channel parameter to specific parameter index, the channel is read by the driver until end of stream
+     *
+     * @param value          the channel to read from
+     * @param parameterIndex the parameter index
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setChannel(ReadableByteChannel value, int parameterIndex) {
+        try {
+            remember(parameterIndex, null);
+            stmt.setBinaryStream(parameterIndex, Channels.newInputStream(value));
+            return this;
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error setting channel parameter", ex);
+        }
+    }
+
+    /**
+     * Set a file content parameter to consecutive parameter index, the file is streamed to the driver and closed after execution
+     *
+     * @param value the file path
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setFile(Path value) {
+        return setFile(value, index++);
+    }
+
+    /**
+     * Set a file content parameter to specific parameter index, the file is streamed to the driver and closed after execution
+     *
+     * @param value          the file path
+     * @param parameterIndex the parameter index
+     * @return same PreparedStatementBuilder instance
+     */
+    public PreparedStatementBuilder setFile(Path value, int parameterIndex) {
+        try {
+            long size = Files.size(value);
+            InputStream in = Files.newInputStream(value);
+            attach(in);
+            if (size <= Integer.MAX_VALUE) {
+                remember(parameterIndex, null);
+                stmt.setBinaryStream(parameterIndex, in, (int) size);
+            } else {
+                remember(parameterIndex, null);
+                stmt.setBinaryStream(parameterIndex, in, size);
+            }
+            return this;
+        } catch (IOException ex) {
+            throw new DataAccessException("Error reading file " + value, ex);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error setting file parameter", ex);
+        }
+    }
+
     /**
      * Set a character stream parameter to consecutive parameter index
      *
@@ -309,6 +587,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setCharacterStream(java.io.Reader value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setCharacterStream(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -335,6 +614,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setClob(Clob value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setClob(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -361,6 +641,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setDate(Date value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setDate(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -387,6 +668,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setDouble(double value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setDouble(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -413,6 +695,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setFloat(float value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setFloat(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -439,6 +722,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setInt(int value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setInt(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -507,6 +791,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setLong(long value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setLong(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -533,6 +818,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNCharacterStream(java.io.Reader value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setNCharacterStream(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -559,6 +845,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNClob(NClob value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setNClob(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -585,6 +872,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNClob(java.io.Reader value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setNClob(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -611,6 +899,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNString(String value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setNString(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -637,6 +926,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNull(int sqlType, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setNull(parameterIndex, sqlType);
             return this;
         } catch (SQLException ex) {
@@ -665,6 +955,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setNull(int sqlType, String typeName, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setNull(parameterIndex, sqlType, typeName);
             return this;
         } catch (SQLException ex) {
@@ -691,6 +982,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setObject(Object value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setObject(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -717,6 +1009,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setRef(Ref value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setRef(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -743,6 +1036,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setRowId(RowId value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setRowId(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -769,6 +1063,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setShort(short value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setShort(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -795,6 +1090,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setSQLXML(SQLXML value, int parameterIndex) {
         try {
+            remember(parameterIndex, null);
             stmt.setSQLXML(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -821,6 +1117,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setString(String value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setString(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -860,6 +1157,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setTime(Time value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setTime(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -886,6 +1184,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setTimestamp(Timestamp value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setTimestamp(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -912,6 +1211,7 @@ public class PreparedStatementBuilder {
      */
     public PreparedStatementBuilder setURL(java.net.URL value, int parameterIndex) {
         try {
+            remember(parameterIndex, value);
             stmt.setURL(parameterIndex, value);
             return this;
         } catch (SQLException ex) {
@@ -928,31 +1228,8 @@ public class PreparedStatementBuilder {
     public PreparedStatementBuilder setParameters(Map<Integer, Object> parameters) {
         try {
             for (var entry : parameters.entrySet()) {
-                int index = entry.getKey();
-                Object value = entry.getValue();
-                if (value instanceof String x) {
-                    this.stmt.setString(index, x);
-                } else if (value instanceof Integer x) {
-                    this.stmt.setInt(index, x);
-                } else if (value instanceof Long x) {
-                    this.stmt.setLong(index, x);
-                } else if (value instanceof Boolean x) {
-                    this.stmt.setBoolean(index, x);
-                } else if (value instanceof Double x) {
-                    this.stmt.setDouble(index, x);
-                } else if (value instanceof Float x) {
-                    this.stmt.setFloat(index, x);
-                } else if (value instanceof Short x) {
-                    this.stmt.setShort(index, x);
-                } else if (value instanceof Byte x) {
-                    this.stmt.setByte(index, x);
-                } else if (value instanceof byte[] x) {
-                    this.stmt.setBytes(index, x);
-                } else if (value == null) {
-                    this.stmt.setNull(index, Types.NULL);
-                } else {
-                    this.stmt.setObject(index, value);
-                }
+                remember(entry.getKey(), entry.getValue());
+                bind(conn, stmt, entry.getKey(), entry.getValue());
             }
             return this;
         } catch (SQLException ex) {
@@ -960,6 +1237,43 @@ public class PreparedStatementBuilder {
         }
     }
 
+    /**
+     * Binds a value to a statement parameter using the setter matching its type
+     *
+     * @param conn  connection, used to create arrays
+     * @param stmt  prepared statement
+     * @param index parameter index
+     * @param value the value, may be null
+     * @throws SQLException if the value cannot be bound
+     */
+    static void bind(Connection conn, PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value instanceof String x) {
+            stmt.setString(index, x);
+        } else if (value instanceof Integer x) {
+            stmt.setInt(index, x);
+        } else if (value instanceof Long x) {
+            stmt.setLong(index, x);
+        } else if (value instanceof Boolean x) {
+            stmt.setBoolean(index, x);
+        } else if (value instanceof Double x) {
+            stmt.setDouble(index, x);
+        } else if (value instanceof Float x) {
+            stmt.setFloat(index, x);
+        } else if (value instanceof Short x) {
+            stmt.setShort(index, x);
+        } else if (value instanceof Byte x) {
+            stmt.setByte(index, x);
+        } else if (value instanceof byte[] x) {
+            stmt.setBytes(index, x);
+        } else if (value instanceof SqlArray x) {
+            stmt.setArray(index, conn.createArrayOf(x.typeName(), x.elements()));
+        } else if (value == null) {
+            stmt.setNull(index, Types.NULL);
+        } else {
+            stmt.setObject(index, value);
+        }
+    }
+
     /**
      * Sets a result mapper function to be used in the query execution
      *
@@ -968,79 +1282,280 @@ public class PreparedStatementBuilder {
      * @return a PreparedStatementExecutor instance
      */
     public <T> PreparedStatementExecutor<T> resultMapper(Function<ResultSetWrapper, T> function) {
-        return new PreparedStatementExecutor<>(stmt, function);
+        return executor(function);
     }
 
     /**
      * Uses a record class to map the result set to a record instance. Uses record components so components name must match the column names
+     * or, when the record is annotated with {@link GenerateMapper} and was compiled with the processor, its generated mapper
      *
      * @param clazz the record class
      * @param <T>   the type of the record
      * @return a PreparedStatementExecutor instance
      */
     public <T> PreparedStatementExecutor<T> resultMapper(Class<T> clazz) {
+        return executor(recordMapper(clazz));
+    }
+
+    /**
+     * Executes the query and reduces the rows straight from the result set, without mapping them first.
+     * The collector receives the same ResultSetWrapper positioned on each row
+     *
+     * @param collector collector of the rows, see {@link RowCollectors}
+     * @param <A>       intermediate accumulation type
+     * @param <R>       result type
+     * @return result of the reduction
+     */
+    public <A, R> R collect(Collector<? super ResultSetWrapper, A, R> collector) {
+        return resultMapper(Function.identity()).collect(collector);
+    }
+
+    /**
+     * Returns the function mapping the current row to a record instance, components name must match the column names.
+     * A {@link RecordMapper} generated for the class is used when present, reading the columns by index; otherwise the
+     * function is built with reflection once per class, so the reflection is paid by the first query or by {@link WarmUp}
+     *
+     * @param clazz the record class
+     * @param <T>   the type of the record
+     * @return the mapping function
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Function<ResultSetWrapper, T> recordMapper(Class<T> clazz) {
+        var generated = Records.generated(clazz);
+        if (generated != null) {
+            return new IndexedRecordMapper<>(generated);
+        }
+        return (Function<ResultSetWrapper, T>) RECORD_MAPPERS.get(clazz);
+    }
+
+    /**
+     * Creates a function mapping the current row to a record instance, each component is read from the column named
+     * as the component with the given prefix
+     *
+     * @param clazz  the record class
+     * @param prefix prefix of the column names, may be empty
+     * @param <T>    the type of the record
+     * @return the mapping function
+     */
+    static <T> Function<ResultSetWrapper, T> recordMapper(Class<T> clazz, String prefix) {
+        Constructor<?> constructor = recordConstructor(clazz);
+        RecordComponent[] components = clazz.getRecordComponents();
+        String[] columns = new String[components.length];
+        for (int i = 0; i < components.length; i++) {
+            columns[i] = prefix + components[i].getName();
+        }
+        return (rs) -> {
+            Object[] values = new Object[components.length];
+            for (int i = 0; i < components.length; i++) {
+                values[i] = readComponent(rs, components[i].getType(), columns[i]);
+            }
+            return newRecord(constructor, values);
+        };
+    }
+
+    /**
+     * Executes the query and assembles parent records with their children from a joined query in a single pass.
+     * The parent record must have one {@link List} component that receives the children, every other component is read
+     * from the column with its name. Rows must be ordered by the parent key so the children of a parent are consecutive;
+     * rows where the first child column is NULL, as produced by a LEFT JOIN, add no child
+     *
+     * @param parentClass     the parent record class
+     * @param childClass      the child record class
+     * @param parentKeyColumn column identifying the parent of each row
+     * @param <P>             the type of the parent record
+     * @param <C>             the type of the child record
+     * @return list of parents in query order
+     */
+    public <P, C> List<P> oneToMany(Class<P> parentClass, Class<C> childClass, String parentKeyColumn) {
+        return oneToMany(parentClass, childClass, parentKeyColumn, "");
+    }
+
+    /**
+     * Executes the query and assembles parent records with their children from a joined query in a single pass,
+     * reading child components from columns with a prefix to avoid clashes with parent column names
+     *
+     * @param parentClass     the parent record class
+     * @param childClass      the child record class
+     * @param parentKeyColumn column identifying the parent of each row
+     * @param childPrefix     prefix of the child column names (e.g. "item_")
+     * @param <P>             the type of the parent record
+     * @param <C>             the type of the child record
+     * @return list of parents in query order
+     * @see #oneToMany(Class, Class, String)
+     */
+    public <P, C> List<P> oneToMany(Class<P> parentClass, Class<C> childClass, String parentKeyColumn, String childPrefix) {
+        List<P> list = new ArrayList<>();
+        oneToMany(parentClass, childClass, parentKeyColumn, childPrefix, list::add);
+        return list;
+    }
+
+    /**
+     * Executes the query and passes each assembled parent to a consumer as soon as its last child has been read,
+     * only one parent is held in memory at a time
+     *
+     * @param parentClass     the parent record class
+     * @param childClass      the child record class
+     * @param parentKeyColumn column identifying the parent of each row
+     * @param childPrefix     prefix of the child column names, may be empty
+     * @param consumer        action to execute for each parent
+     * @param <P>             the type of the parent record
+     * @param <C>             the type of the child record
+     * @see #oneToMany(Class, Class, String)
+     */
+    public <P, C> void oneToMany(Class<P> parentClass, Class<C> childClass, String parentKeyColumn, String childPrefix, Consumer<P> consumer) {
+        Constructor<?> constructor = recordConstructor(parentClass);
+        RecordComponent[] components = parentClass.getRecordComponents();
+        int childrenIndex = -1;
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].getType() == List.class) {
+                childrenIndex = i;
+            }
+        }
+        if (childrenIndex == -1) {
+            throw new DataAccessException("Record class " + parentClass.getName() + " has no List component for children");
+        }
+        Function<ResultSetWrapper, C> childMapper = recordMapper(childClass, childPrefix);
+        String childMarker = childPrefix + childClass.getRecordComponents()[0].getName();
+        int listIndex = childrenIndex;
+        var group = new Object() {
+            Object key;
+            Object[] values;
+            List<C> children;
+
+            void flush() {
+                if (values != null) {
+                    values[listIndex] = Collections.unmodifiableList(children);
+                    consumer.accept(newRecord(constructor, values));
+                }
+            }
+        };
+        resultMapper(Function.identity()).forEach(rs -> {
+            Object key = rs.getObject(parentKeyColumn);
+            if (group.values == null || !Objects.equals(key, group.key)) {
+                group.flush();
+                group.key = key;
+                group.values = new Object[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    if (i != listIndex) {
+                        group.values[i] = readComponent(rs, components[i].getType(), components[i].getName());
+                    }
+                }
+                group.children = new ArrayList<>();
+            }
+            if (rs.getObject(childMarker) != null) {
+                group.children.add(childMapper.apply(rs));
+            }
+        });
+        group.flush();
+    }
+
+    /**
+     * Finds the canonical constructor of a record class
+     *
+     * @param clazz the record class
+     * @return the constructor matching the record components
+     * @throws DataAccessException if the class is not a record or has no canonical constructor
+     */
+    private static Constructor<?> recordConstructor(Class<?> clazz) {
         if (!clazz.isRecord()) {
             throw new DataAccessException("Class " + clazz.getName() + " is not a record");
         }
         RecordComponent[] components = clazz.getRecordComponents();
-        Constructor<?> constructor = null;
         for (var c : clazz.getDeclaredConstructors()) {
             if (matchesParameterTypes(c, components)) {
-                constructor = c;
-                break;
+                return c;
             }
         }
-        if (constructor == null) {
-            throw new DataAccessException("No matching constructor found for record class " + clazz.getName());
+        throw new DataAccessException("No matching constructor found for record class " + clazz.getName());
+    }
+
+    /**
+     * Reads a column as the type of a record component
+     *
+     * @param rs     the result set positioned on a row
+     * @param type   the component type
+     * @param column the column name
+     * @return the value
+     * @throws DataAccessException if the type is not supported
+     */
+    private static Object readComponent(ResultSetWrapper rs, Class<?> type, String column) {
+        if (type == String.class) {
+            return rs.getString(column);
+        } else if (type == long.class) {
+            return rs.getLong(column);
+        } else if (type == int.class) {
+            return rs.getInt(column);
+        } else if (type == boolean.class) {
+            return rs.getBoolean(column);
+        } else if (type == double.class) {
+            return rs.getDouble(column);
+        } else if (type == float.class) {
+            return rs.getFloat(column);
+        } else if (type == short.class) {
+            return rs.getShort(column);
+        } else if (type == byte.class) {
+            return rs.getByte(column);
+        } else if (type == byte[].class) {
+            return rs.getBytes(column);
+        } else if (type == LocalDateTime.class) {
+            return rs.getLocalDateTimeLong(column);
+        } else if (type == ZonedDateTime.class) {
+            return rs.getZonedDateTimeLong(column);
         }
-        Constructor<?> finalConstructor = constructor;
-        Function<ResultSetWrapper, T> function = (rs) -> {
-            Object[] values = new Object[components.length];
-            for (int i = 0; i < components.length; i++) {
-                var c = components[i];
-                if (c.getType() == String.class) {
-                    values[i] = rs.getString(c.getName());
-                } else if (c.getType() == long.class) {
-                    values[i] = rs.getLong(c.getName());
-                } else if (c.getType() == int.class) {
-                    values[i] = rs.getInt(c.getName());
-                } else if ((c.getType() == boolean.class)) {
-                    values[i] = rs.getBoolean(c.getName());
-                } else if (c.getType() == double.class) {
-                    values[i] = rs.getDouble(c.getName());
-                } else if (c.getType() == float.class) {
-                    values[i] = rs.getFloat(c.getName());
-                } else if (c.getType() == short.class) {
-                    values[i] = rs.getShort(c.getName());
-                } else if (c.getType() == byte.class) {
-                    values[i] = rs.getByte(c.getName());
-                } else if (c.getType() == byte[].class) {
-                    values[i] = rs.getBytes(c.getName());
-                } else if (c.getType() == LocalDateTime.class) {
-                    values[i] = rs.getLocalDateTimeLong(c.getName());
-                } else if (c.getType() == ZonedDateTime.class) {
-                    values[i] = rs.getZonedDateTimeLong(c.getName());
-                } else {
-                    throw new DataAccessException("Type " + c.getType().getSimpleName() + " not supported");
-                }
-            }
-            try {
-                return (T) finalConstructor.newInstance(values);
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
-                throw new DataAccessException("Error creating record instance", ex);
-            }
-        };
-        return new PreparedStatementExecutor<>(stmt, function);
+        throw new DataAccessException("Type " + type.getSimpleName() + " not supported");
+    }
+
+    /**
+     * Creates a record instance
+     *
+     * @param constructor the canonical constructor
+     * @param values      the component values
+     * @param <T>         the type of the record
+     * @return the record instance
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T newRecord(Constructor<?> constructor, Object[] values) {
+        try {
+            return (T) constructor.newInstance(values);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new DataAccessException("Error creating record instance", ex);
+        }
+    }
+
+    /**
+     * Executes the query and writes every row straight from the result set to an output stream, see {@link ExportOptions}
+     *
+     * @param out     output stream, it is flushed but not closed
+     * @param options export options
+     * @return number of rows written
+     */
+    public long export(OutputStream out, ExportOptions options) {
+        return executor(rs -> null).export(out, options);
+    }
+
+    /**
+     * Executes the query and writes every row straight from the result set to a channel, see {@link ExportOptions}
+     *
+     * @param channel output channel, it is not closed
+     * @param options export options
+     * @return number of rows written
+     */
+    public long export(WritableByteChannel channel, ExportOptions options) {
+        return executor(rs -> null).export(channel, options);
     }
 
     /**
      * Execute query without result using PreparedStatement.execute
      */
     public void execute() {
+        var timer = timer();
         try (stmt) {
+            timer.start();
             stmt.execute();
         } catch (SQLException ex) {
-            throw new DataAccessException("Error executing query", ex);
+            throw timer.fail("Error executing query", ex);
+        } finally {
+            release();
         }
     }
 
@@ -1050,23 +1565,52 @@ public class PreparedStatementBuilder {
      * @return the number of rows affected
      */
     public int executeUpdate() {
+        var timer = timer();
         try (stmt) {
+            timer.start();
             return stmt.executeUpdate();
         } catch (SQLException ex) {
-            throw new DataAccessException("Error executing update", ex);
+            throw timer.fail("Error executing update", ex);
+        } finally {
+            release();
         }
     }
 
     /**
-     * Execute a query statement using PreparedStatement.executeQuery and wrap the result in a ResultSetWrapper
+     * Execute a query statement using PreparedStatement.executeQuery and wrap the result in a ResultSetWrapper.
+     * The statement is closed and released when the wrapper is closed or its last row has been read, so close it when
+     * the rows are not read to the end
      *
      * @return the ResultSetWrapper
      */
     public ResultSetWrapper executeQuery() {
+        var timer = timer();
+        boolean executed = false;
         try {
-            return new ResultSetWrapper(stmt.executeQuery());
+            timer.start();
+            var rs = new ResultSetWrapper(stmt.executeQuery()).onClose(this::closeStatement);
+            timer.pause();
+            executed = true;
+            return rs;
         } catch (SQLException ex) {
-            throw new DataAccessException("Error executing query", ex);
+            throw timer.fail("Error executing query", ex);
+        } finally {
+            if (!executed) {
+                closeStatement();
+            }
+        }
+    }
+
+    /**
+     * Closes the statement handed out by {@link #executeQuery()} and releases its attachments
+     */
+    private void closeStatement() {
+        try {
+            stmt.close();
+        } catch (SQLException ignored) {
+            // the rows have already been read or abandoned
+        } finally {
+            release();
         }
     }
 
@@ -1076,13 +1620,17 @@ public class PreparedStatementBuilder {
      * @return the autoincremented id
      */
     public int insertAutoincrement() {
+        var timer = timer();
         try (stmt) {
+            timer.start();
             stmt.execute();
             try (var rs = stmt.getGeneratedKeys()) {
                 return rs.getInt(1);
             }
         } catch (SQLException ex) {
-            throw new DataAccessException("Error executing insert", ex);
+            throw timer.fail("Error executing insert", ex);
+        } finally {
+            release();
         }
     }
 
@@ -1107,10 +1655,48 @@ public class PreparedStatementBuilder {
      * @return an array of update counts for each command in the batch
      */
     public int[] executeBatch() {
+        var timer = timer();
         try {
+            timer.start();
             return stmt.executeBatch();
         } catch (SQLException ex) {
-            throw new DataAccessException("Error executing batch", ex);
+            throw timer.fail("Error executing batch", ex);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Input stream reading the remaining bytes of a buffer, used to stream direct buffers to the driver
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
     }
 
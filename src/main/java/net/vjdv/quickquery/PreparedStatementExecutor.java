@@ -2,14 +2,27 @@ package net.vjdv.quickquery;
 
 import net.vjdv.quickquery.exceptions.DataAccessException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Executes a prepared statement and processes the result set
@@ -19,6 +32,17 @@ import java.util.function.Function;
 public class PreparedStatementExecutor<T> {
     private final PreparedStatement stmt;
     private final Function<ResultSetWrapper, T> function;
+    private final Runnable onClose;
+    private final StatementTimer timer;
+    private StringPool pool;
+    private AdaptiveFetchSize fetchSize;
+    private String sql;
+    private AdaptiveFetchSize.Sampler sampler;
+    private String[] pooledColumns = {};
+    private int prefetchRows;
+    private int prefetchBuffers = 2;
+    private int parallelRows;
+    private ForkJoinPool parallelPool;
 
     /**
      * Creates a new instance of PreparedStatementExecutor
@@ -27,8 +51,139 @@ public class PreparedStatementExecutor<T> {
      * @param function function to process the result set
      */
     public PreparedStatementExecutor(PreparedStatement stmt, Function<ResultSetWrapper, T> function) {
+        this(stmt, function, () -> {
+        });
+    }
+
+    /**
+     * Creates a new instance of PreparedStatementExecutor
+     *
+     * @param stmt     prepared statement
+     * @param function function to process the result set
+     * @param onClose  action to run once the statement has been executed and closed
+     */
+    PreparedStatementExecutor(PreparedStatement stmt, Function<ResultSetWrapper, T> function, Runnable onClose) {
+        this(stmt, function, onClose, new StatementTimer(stmt, null));
+    }
+
+    /**
+     * Creates a new instance of PreparedStatementExecutor
+     *
+     * @param stmt     prepared statement
+     * @param function function to process the result set
+     * @param onClose  action to run once the statement has been executed and closed
+     * @param timer    enforces the deadline of the statement
+     */
+    PreparedStatementExecutor(PreparedStatement stmt, Function<ResultSetWrapper, T> function, Runnable onClose, StatementTimer timer) {
         this.stmt = stmt;
         this.function = function;
+        this.onClose = onClose;
+        this.timer = timer;
+    }
+
+    /**
+     * Deduplicates the strings of every column with a new pool, repeated values share one instance in the results
+     *
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> dedupStrings() {
+        return dedupStrings(new StringPool());
+    }
+
+    /**
+     * Deduplicates strings read with getString, including the ones read by the record mapper. A pool can be shared
+     * between queries to keep instances shared across results
+     *
+     * @param pool    string pool
+     * @param columns columns to deduplicate; all columns when empty
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> dedupStrings(StringPool pool, String... columns) {
+        this.pool = pool;
+        this.pooledColumns = columns;
+        return this;
+    }
+
+    /**
+     * Tunes the fetch size from the width of the first rows, see {@link AdaptiveFetchSize}. Only statements created
+     * from SQL by a {@link ConnectionWrapper} can be tuned
+     *
+     * @param fetchSize tuner, shared to reuse what it learned; null to disable
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> adaptiveFetchSize(AdaptiveFetchSize fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Sets the fetch size tuner along with the SQL used as its key
+     *
+     * @param fetchSize tuner, may be null
+     * @param sql       SQL of the statement, may be null
+     * @return same PreparedStatementExecutor instance
+     */
+    PreparedStatementExecutor<T> adaptiveFetchSize(AdaptiveFetchSize fetchSize, String sql) {
+        this.sql = sql;
+        return adaptiveFetchSize(fetchSize);
+    }
+
+    /**
+     * Reads and maps rows on a background thread while forEach, collect and stream consumers process the previous
+     * batches, so fetching and processing overlap. Uses two buffers, see {@link #prefetch(int, int)}
+     *
+     * @param batchRows rows per buffer
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> prefetch(int batchRows) {
+        return prefetch(batchRows, 2);
+    }
+
+    /**
+     * Reads and maps rows on a background thread while forEach, collect and stream consumers process the previous
+     * batches. The reader waits when all buffers are full, so at most {@code batchRows * (buffers + 2)} items are held.
+     * The mapper runs on the reader thread and must return items that do not depend on the reused ResultSetWrapper
+     *
+     * @param batchRows rows per buffer
+     * @param buffers   filled buffers the reader may get ahead of the consumer
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> prefetch(int batchRows, int buffers) {
+        if (batchRows < 1 || buffers < 1) {
+            throw new IllegalArgumentException("Prefetch needs at least one row and one buffer");
+        }
+        this.prefetchRows = batchRows;
+        this.prefetchBuffers = buffers;
+        return this;
+    }
+
+    /**
+     * Maps rows in parallel on the common fork-join pool, see {@link #parallel(int, ForkJoinPool)}
+     *
+     * @param chunkRows rows per mapping task
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> parallel(int chunkRows) {
+        return parallel(chunkRows, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Maps rows in parallel for list, forEach, collect and stream, worth it when the mapper is expensive. The reading
+     * thread only copies column values into chunks, the mapper runs on the pool over read-only views of the copies and
+     * results keep the order of the rows. The mapper must be thread safe and must not move the cursor or use the
+     * ResultSet; LOBs are copied whole
+     *
+     * @param chunkRows rows per mapping task
+     * @param pool      pool running the mapper
+     * @return same PreparedStatementExecutor instance
+     */
+    public PreparedStatementExecutor<T> parallel(int chunkRows, ForkJoinPool pool) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("Parallel mapping needs at least one row per chunk");
+        }
+        this.parallelRows = chunkRows;
+        this.parallelPool = pool;
+        return this;
     }
 
     /**
@@ -38,13 +193,15 @@ public class PreparedStatementExecutor<T> {
      */
     public Optional<T> findOne() {
         AtomicReference<T> result = new AtomicReference<>(null);
-        try (stmt; var rs = stmt.executeQuery()) {
-            if (rs.next()) {
-                T item = function.apply(new ResultSetWrapper(rs));
+        try (stmt; var rs = executeQuery()) {
+            if (timer.next(rs)) {
+                T item = function.apply(new ResultSetWrapper(rs, pool, pooledColumns));
                 result.set(item);
             }
-        } catch (SQLException ex) {
-            throw new DataAccessException("Error quering item", ex);
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error quering item", ex);
+        } finally {
+            onClose.run();
         }
         return Optional.ofNullable(result.get());
     }
@@ -56,31 +213,392 @@ public class PreparedStatementExecutor<T> {
      */
     public List<T> list() {
         List<T> list = new ArrayList<>();
-        try (stmt; var rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                T item = function.apply(new ResultSetWrapper(rs));
+        if (parallelRows > 0) {
+            parallelScan(list::add);
+            return list;
+        }
+        try (stmt; var rs = executeQuery()) {
+            var row = new ResultSetWrapper(rs, pool, pooledColumns);
+            while (next(rs)) {
+                T item = function.apply(row);
                 list.add(item);
             }
-        } catch (SQLException ex) {
-            throw new DataAccessException("Error quering list", ex);
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error quering list", ex);
+        } finally {
+            onClose.run();
         }
         return list;
     }
 
     /**
-     * Executes an action for each row in the result set
+     * Executes an action for each row in the result set, on batches read in the background when prefetch is enabled.
+     * An exception thrown by the action stops the scan
      *
      * @param consumer action to execute
      */
     public void forEach(Consumer<T> consumer) {
-        try (stmt; var rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                T item = function.apply(new ResultSetWrapper(rs));
+        if (prefetchRows == 0) {
+            scan(consumer);
+            return;
+        }
+        try (var rows = new Prefetcher<T>(this::scan, prefetchRows, prefetchBuffers)) {
+            while (rows.hasNext()) {
+                consumer.accept(rows.next());
+            }
+        }
+    }
+
+    /**
+     * Streams the mapped items, read and mapped on the consuming thread unless prefetch moves reading to a background
+     * thread or parallel mapping moves the mapper to the pool, buffered in batches of 256 rows when only parallel mapping
+     * is set. The stream must be closed, closing it early stops the scan and releases the statement
+     *
+     * @return stream of items
+     */
+    public Stream<T> stream() {
+        if (prefetchRows == 0 && parallelRows == 0) {
+            var rows = new Rows();
+            return StreamSupport.stream(rows, false).onClose(rows::close);
+        }
+        var rows = new Prefetcher<T>(this::scan, prefetchRows == 0 ? 256 : prefetchRows, prefetchBuffers);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+
+    /**
+     * Executes an action for each row on the current thread, mapping in parallel when enabled
+     *
+     * @param consumer action to execute
+     */
+    private void scan(Consumer<T> consumer) {
+        if (parallelRows > 0) {
+            parallelScan(consumer);
+        } else {
+            sequentialScan(consumer);
+        }
+    }
+
+    /**
+     * Copies rows in chunks mapped on the pool, passing the results to the action in row order. The number of chunks in
+     * flight is bounded by twice the pool parallelism, so reading waits for mapping instead of buffering the table
+     *
+     * @param consumer action to execute
+     */
+    private void parallelScan(Consumer<T> consumer) {
+        var pending = new ArrayDeque<ForkJoinTask<List<T>>>();
+        int maxPending = Math.max(2, parallelPool.getParallelism() * 2);
+        try (stmt; var rs = executeQuery()) {
+            var layout = new BufferedRow.Layout(rs.getMetaData(), pool, pooledColumns);
+            var chunk = new ArrayList<Object[]>(parallelRows);
+            while (next(rs)) {
+                chunk.add(layout.copy(rs));
+                if (chunk.size() == parallelRows) {
+                    pending.add(parallelPool.submit(mapping(layout, chunk)));
+                    chunk = new ArrayList<>(parallelRows);
+                    if (pending.size() >= maxPending) {
+                        pending.poll().join().forEach(consumer);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(parallelPool.submit(mapping(layout, chunk)));
+            }
+            while (!pending.isEmpty()) {
+                pending.poll().join().forEach(consumer);
+            }
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error quering list", ex);
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+            onClose.run();
+        }
+    }
+
+    /**
+     * Task mapping a chunk of copied rows
+     *
+     * @param layout columns of the result set
+     * @param chunk  copied rows
+     * @return task returning the mapped items in order
+     */
+    private Callable<List<T>> mapping(BufferedRow.Layout layout, List<Object[]> chunk) {
+        return () -> {
+            var row = new BufferedRow(layout);
+            var items = new ArrayList<T>(chunk.size());
+            for (Object[] values : chunk) {
+                row.set(values);
+                items.add(function.apply(row));
+            }
+            return items;
+        };
+    }
+
+    /**
+     * Executes an action for each row on the current thread
+     *
+     * @param consumer action to execute
+     */
+    private void sequentialScan(Consumer<T> consumer) {
+        try (stmt; var rs = executeQuery()) {
+            var row = new ResultSetWrapper(rs, pool, pooledColumns);
+            while (next(rs)) {
+                T item = function.apply(row);
                 consumer.accept(item);
             }
-        } catch (SQLException ex) {
-            throw new DataAccessException("Error quering list", ex);
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error quering list", ex);
+        } finally {
+            onClose.run();
         }
     }
 
+    /**
+     * Rows of a stream read and mapped on the consuming thread, the query runs on the first advance and the statement
+     * is released at the end of the rows, on failure or when the stream is closed
+     */
+    private final class Rows extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+        private ResultSet rs;
+        private ResultSetWrapper row;
+        private boolean closed;
+
+        Rows() {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T item;
+            try {
+                if (rs == null) {
+                    rs = executeQuery();
+                    row = new ResultSetWrapper(rs, pool, pooledColumns);
+                }
+                if (!next(rs)) {
+                    close();
+                    return false;
+                }
+                item = function.apply(row);
+            } catch (SQLException | DataAccessException ex) {
+                close();
+                throw timer.fail("Error quering list", ex);
+            } catch (RuntimeException ex) {
+                close();
+                throw ex;
+            }
+            action.accept(item);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (stmt) {
+                if (rs != null) {
+                    rs.close();
+                }
+            } catch (SQLException ignored) {
+                // the rows have already been read or abandoned
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+
+    /**
+     * Builds an immutable index of the mapped rows by a long key column, see {@link #toIndex(String, int)}
+     *
+     * @param keyColumn column with the key of each row
+     * @return index of items by key
+     */
+    public LongIndex<T> toIndex(String keyColumn) {
+        return toIndex(keyColumn, 1024);
+    }
+
+    /**
+     * Builds an immutable index of the mapped rows by a long key column straight from the result set, keys are never
+     * boxed. Rows with a NULL key or mapped to null are skipped and a later row replaces an earlier one with the same key
+     *
+     * @param keyColumn    column with the key of each row
+     * @param expectedRows row count hint used to size the index, avoids rehashing when accurate
+     * @return index of items by key
+     */
+    public LongIndex<T> toIndex(String keyColumn, int expectedRows) {
+        var index = new LongIndex<T>(expectedRows);
+        try (stmt; var rs = executeQuery()) {
+            var row = new ResultSetWrapper(rs, pool, pooledColumns);
+            while (next(rs)) {
+                long key = rs.getLong(keyColumn);
+                if (rs.wasNull()) {
+                    continue;
+                }
+                T item = function.apply(row);
+                if (item != null) {
+                    index.put(key, item);
+                }
+            }
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error building index", ex);
+        } finally {
+            onClose.run();
+        }
+        return index;
+    }
+
+    /**
+     * Builds an immutable index of the mapped rows by an int key column, see {@link #toIntIndex(String, int)}
+     *
+     * @param keyColumn column with the key of each row
+     * @return index of items by key
+     */
+    public IntIndex<T> toIntIndex(String keyColumn) {
+        return toIntIndex(keyColumn, 1024);
+    }
+
+    /**
+     * Builds an immutable index of the mapped rows by an int key column straight from the result set, keys are never
+     * boxed. Rows with a NULL key or mapped to null are skipped and a later row replaces an earlier one with the same key
+     *
+     * @param keyColumn    column with the key of each row
+     * @param expectedRows row count hint used to size the index, avoids rehashing when accurate
+     * @return index of items by key
+     */
+    public IntIndex<T> toIntIndex(String keyColumn, int expectedRows) {
+        var index = new IntIndex<T>(expectedRows);
+        try (stmt; var rs = executeQuery()) {
+            var row = new ResultSetWrapper(rs, pool, pooledColumns);
+            while (next(rs)) {
+                int key = rs.getInt(keyColumn);
+                if (rs.wasNull()) {
+                    continue;
+                }
+                T item = function.apply(row);
+                if (item != null) {
+                    index.put(key, item);
+                }
+            }
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error building index", ex);
+        } finally {
+            onClose.run();
+        }
+        return index;
+    }
+
+    /**
+     * Performs a mutable reduction over the rows as they are read, no intermediate list is built so memory depends only
+     * on the collector. The rows passed to the collector are the mapped items; with an identity mapper they are the same
+     * reused ResultSetWrapper, so collectors must read what they need from it instead of keeping it
+     *
+     * @param collector collector of the mapped items
+     * @param <A>       intermediate accumulation type
+     * @param <R>       result type
+     * @return result of the reduction
+     */
+    public <A, R> R collect(Collector<? super T, A, R> collector) {
+        A container = collector.supplier().get();
+        var accumulator = collector.accumulator();
+        forEach(item -> accumulator.accept(container, item));
+        return collector.finisher().apply(container);
+    }
+
+    /**
+     * Writes every row as CSV with header straight from the result set, the result mapper is not used
+     *
+     * @param out output stream, it is flushed but not closed
+     * @return number of rows written
+     */
+    public long exportCsv(OutputStream out) {
+        return export(out, ExportOptions.csv());
+    }
+
+    /**
+     * Writes every row as a JSON object per line straight from the result set, the result mapper is not used
+     *
+     * @param out output stream, it is flushed but not closed
+     * @return number of rows written
+     */
+    public long exportJsonLines(OutputStream out) {
+        return export(out, ExportOptions.jsonLines());
+    }
+
+    /**
+     * Writes every row straight from the result set using the given options, the result mapper is not used
+     *
+     * @param out     output stream, it is flushed but not closed
+     * @param options export options
+     * @return number of rows written
+     */
+    public long export(OutputStream out, ExportOptions options) {
+        return export(RowExporter.sink(out), options);
+    }
+
+    /**
+     * Writes every row straight from the result set using the given options, the result mapper is not used
+     *
+     * @param channel output channel, it is not closed
+     * @param options export options
+     * @return number of rows written
+     */
+    public long export(WritableByteChannel channel, ExportOptions options) {
+        return export(RowExporter.sink(channel), options);
+    }
+
+    /**
+     * Writes every row straight from the result set to a sink
+     *
+     * @param sink    output sink
+     * @param options export options
+     * @return number of rows written
+     */
+    private long export(RowExporter.Sink sink, ExportOptions options) {
+        try (stmt; var rs = executeQuery()) {
+            return new RowExporter(rs, timer, options, sink).export();
+        } catch (SQLException | DataAccessException ex) {
+            throw timer.fail("Error exporting rows", ex);
+        } catch (IOException ex) {
+            throw new DataAccessException("Error writing exported rows", ex);
+        } finally {
+            onClose.run();
+        }
+    }
+
+    /**
+     * Starts the deadline timer, applies the fetch size and executes the query
+     *
+     * @return the result set
+     * @throws SQLException if the query fails
+     */
+    private ResultSet executeQuery() throws SQLException {
+        timer.start();
+        if (fetchSize != null) {
+            sampler = fetchSize.start(stmt, sql);
+        }
+        var rs = stmt.executeQuery();
+        timer.pause();
+        return rs;
+    }
+
+    /**
+     * Moves to the next row of a scan, enforces the deadline and samples the row width
+     *
+     * @param rs result set
+     * @return true if there is a row
+     * @throws SQLException if the row cannot be read or sampled
+     */
+    private boolean next(ResultSet rs) throws SQLException {
+        if (!timer.next(rs)) {
+            return false;
+        }
+        if (sampler != null) {
+            sampler.sample(rs);
+        }
+        return true;
+    }
 }
@@ -0,0 +1,240 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Collects several independent queries and sends them together in a single round trip when the driver
+ * supports multiple result sets, falling back to sequential execution on the same connection otherwise.
+ * Results are delivered through the futures returned when adding each query.
+ */
+public class QueryPipeline {
+    private final Connection conn;
+    private final List<Entry<?>> entries = new ArrayList<>();
+    private boolean sequential = false;
+
+    /**
+     * Creates a new instance of QueryPipeline
+     *
+     * @param conn connection used for every query
+     */
+    public QueryPipeline(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Adds a query returning all its rows
+     *
+     * @param sql        query, without trailing semicolon
+     * @param function   the function to map each row
+     * @param parameters positional parameters
+     * @param <T>        the type of the result
+     * @return future completed with the rows once the pipeline is executed
+     */
+    public <T> CompletableFuture<List<T>> add(String sql, Function<ResultSetWrapper, T> function, Object... parameters) {
+        var entry = new Entry<>(sql, function, parameters);
+        entries.add(entry);
+        return entry.future;
+    }
+
+    /**
+     * Adds a query returning its first row
+     *
+     * @param sql        query, without trailing semicolon
+     * @param function   the function to map the row
+     * @param parameters positional parameters
+     * @param <T>        the type of the result
+     * @return future completed with the first row once the pipeline is executed
+     */
+    public <T> CompletableFuture<Optional<T>> addOne(String sql, Function<ResultSetWrapper, T> function, Object... parameters) {
+        return add(sql, function, parameters).thenApply(list -> list.isEmpty() ? Optional.empty() : Optional.ofNullable(list.get(0)));
+    }
+
+    /**
+     * Executes each query with its own statement even if the driver supports multiple result sets
+     *
+     * @return same QueryPipeline instance
+     */
+    public QueryPipeline sequential() {
+        this.sequential = true;
+        return this;
+    }
+
+    /**
+     * Executes the queries and completes their futures
+     *
+     * @throws DataAccessException if any query fails, the futures of the failed queries are completed exceptionally
+     */
+    public void execute() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        boolean batched = false;
+        if (!sequential && entries.size() > 1) {
+            try {
+                batched = conn.getMetaData().supportsMultipleResultSets();
+            } catch (SQLException ex) {
+                batched = false;
+            }
+        }
+        if (batched) {
+            try {
+                executeCombined();
+                return;
+            } catch (SQLException ex) {
+                // the driver rejected the combined statement, run them one by one
+            } catch (RuntimeException ex) {
+                for (var entry : entries) {
+                    entry.future.completeExceptionally(ex);
+                }
+                throw ex;
+            }
+        }
+        executeSequential();
+    }
+
+    /**
+     * Sends every query in one statement and reads the result sets in order
+     *
+     * @throws SQLException if the driver rejects the combined statement
+     */
+    private void executeCombined() throws SQLException {
+        var sql = new StringBuilder();
+        Map<Integer, Object> parameters = new HashMap<>();
+        for (var entry : entries) {
+            if (!sql.isEmpty()) {
+                sql.append(";\n");
+            }
+            sql.append(entry.sql);
+            for (var value : entry.parameters) {
+                parameters.put(parameters.size() + 1, value);
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            new PreparedStatementBuilder(conn, stmt).setParameters(parameters);
+            boolean isResultSet = stmt.execute();
+            List<List<?>> results = new ArrayList<>();
+            var failures = new DataAccessException[entries.size()];
+            while (results.size() < entries.size()) {
+                if (isResultSet) {
+                    int index = results.size();
+                    try (ResultSet rs = stmt.getResultSet()) {
+                        results.add(entries.get(index).read(rs));
+                    } catch (RuntimeException ex) {
+                        results.add(null);
+                        failures[index] = failure(ex);
+                    }
+                } else if (stmt.getUpdateCount() == -1) {
+                    throw new SQLException("Expected " + entries.size() + " result sets but got " + results.size());
+                }
+                isResultSet = stmt.getMoreResults();
+            }
+            DataAccessException error = null;
+            for (int i = 0; i < entries.size(); i++) {
+                if (failures[i] == null) {
+                    entries.get(i).complete(results.get(i));
+                } else {
+                    entries.get(i).future.completeExceptionally(failures[i]);
+                    error = collect(error, failures[i]);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Executes every query with its own statement on the same connection
+     */
+    private void executeSequential() {
+        DataAccessException error = null;
+        for (var entry : entries) {
+            Map<Integer, Object> parameters = new HashMap<>();
+            for (var value : entry.parameters) {
+                parameters.put(parameters.size() + 1, value);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(entry.sql)) {
+                new PreparedStatementBuilder(conn, stmt).setParameters(parameters);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    entry.complete(entry.read(rs));
+                }
+            } catch (SQLException | RuntimeException ex) {
+                var failure = failure(ex);
+                entry.future.completeExceptionally(failure);
+                error = collect(error, failure);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Wraps the failure of a query
+     *
+     * @param ex exception thrown executing or mapping the query
+     * @return the failure reported through its future
+     */
+    private static DataAccessException failure(Exception ex) {
+        return ex instanceof DataAccessException dae ? dae : new DataAccessException("Error executing pipeline query", ex);
+    }
+
+    /**
+     * Adds a failure to the error thrown once every query has been executed
+     *
+     * @param error   error collected so far, null if none
+     * @param failure failure of a query
+     * @return the error to throw
+     */
+    private static DataAccessException collect(DataAccessException error, DataAccessException failure) {
+        if (error == null) {
+            return failure;
+        }
+        error.addSuppressed(failure);
+        return error;
+    }
+
+    /**
+     * Query of the pipeline
+     *
+     * @param <T> type of the result
+     */
+    private static class Entry<T> {
+        private final String sql;
+        private final Function<ResultSetWrapper, T> function;
+        private final Object[] parameters;
+        private final CompletableFuture<List<T>> future = new CompletableFuture<>();
+
+        Entry(String sql, Function<ResultSetWrapper, T> function, Object[] parameters) {
+            this.sql = sql;
+            this.function = function;
+            this.parameters = parameters;
+        }
+
+        List<T> read(ResultSet rs) throws SQLException {
+            List<T> list = new ArrayList<>();
+            var wrapper = new ResultSetWrapper(rs);
+            while (rs.next()) {
+                list.add(function.apply(wrapper));
+            }
+            return list;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(List<?> result) {
+            future.complete((List<T>) result);
+        }
+    }
+}
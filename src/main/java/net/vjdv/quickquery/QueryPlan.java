@@ -0,0 +1,70 @@
+package net.vjdv.quickquery;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Execution plan of a query captured by {@link QueryPlans}, with the problems found in it and how long the query took
+ *
+ * @param sql       query
+ * @param plan      plan lines as reported by the database
+ * @param fullScans tables read with a full scan
+ * @param tempSort  true if the plan sorts or groups rows in a temporary structure
+ * @param elapsed   time from execution until the statement was released, including reading the rows
+ */
+public record QueryPlan(String sql, List<String> plan, List<String> fullScans, boolean tempSort, Duration elapsed) {
+    private static final Pattern SQLITE_SCAN = Pattern.compile("^SCAN (?:TABLE )?(?!CONSTANT ROW\\b|SUBQUERY\\b)(\\w+)(?!.*\\bUSING\\b)");
+    private static final Pattern SQLITE_SUBQUERY = Pattern.compile("^(?:CO-ROUTINE|MATERIALIZE) (\\w+)");
+    private static final Pattern POSTGRES_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+    private static final Pattern H2_SCAN = Pattern.compile("(\\w+)\\.tableScan");
+    private static final Pattern POSTGRES_SORT = Pattern.compile("^(?:->\\s*)?(?:Sort|HashAggregate|GroupAggregate)\\b");
+
+    /**
+     * Whether the plan has a full scan or a temporary sort
+     *
+     * @return true if a problem was found
+     */
+    public boolean hasProblems() {
+        return !fullScans.isEmpty() || tempSort;
+    }
+
+    /**
+     * Finds full scans and temporary sorts in the plan output of SQLite, PostgreSQL or H2. Scans of constant rows and
+     * of SQLite co-routines or materialized CTEs are not table scans and are skipped
+     *
+     * @param sql     query
+     * @param plan    plan lines
+     * @param elapsed execution time
+     * @return the plan with its problems
+     */
+    static QueryPlan parse(String sql, List<String> plan, Duration elapsed) {
+        List<String> fullScans = new ArrayList<>();
+        List<String> subqueries = new ArrayList<>();
+        for (String line : plan) {
+            var matcher = SQLITE_SUBQUERY.matcher(line.strip());
+            if (matcher.find()) {
+                subqueries.add(matcher.group(1).toLowerCase(Locale.ROOT));
+            }
+        }
+        boolean tempSort = false;
+        for (String line : plan) {
+            String trimmed = line.strip();
+            for (var pattern : List.of(SQLITE_SCAN, POSTGRES_SCAN, H2_SCAN)) {
+                var matcher = pattern.matcher(trimmed);
+                while (matcher.find()) {
+                    String table = matcher.group(1).toLowerCase(Locale.ROOT);
+                    if (!fullScans.contains(table) && !subqueries.contains(table)) {
+                        fullScans.add(table);
+                    }
+                }
+            }
+            if (trimmed.startsWith("USE TEMP B-TREE") || POSTGRES_SORT.matcher(trimmed).find()) {
+                tempSort = true;
+            }
+        }
+        return new QueryPlan(sql, List.copyOf(plan), List.copyOf(fullScans), tempSort, elapsed);
+    }
+}
@@ -0,0 +1,167 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Captures the execution plan of queries to find missing indexes early. The first time a query fingerprint is executed
+ * the dialect EXPLAIN runs on the same connection with the same parameters, the plan is checked for full table scans
+ * and temporary sorts, and it is reported with the execution time once the statement completes. Explaining is best
+ * effort: statements that cannot be explained are executed normally. In tests, {@link #verify()} fails when a query
+ * scanned a table that is not allowed to be scanned
+ */
+public class QueryPlans {
+    private static final int SEEN_LIMIT = 10_000;
+    private final Consumer<QueryPlan> listener;
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final List<QueryPlan> flagged = new CopyOnWriteArrayList<>();
+    private final Set<String> allowedScans = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private double sampleRate = 1;
+
+    /**
+     * Creates a new instance of QueryPlans that only keeps the plans with problems, see {@link #flagged()}
+     */
+    public QueryPlans() {
+        this(plan -> {
+        });
+    }
+
+    /**
+     * Creates a new instance of QueryPlans
+     *
+     * @param listener receives every captured plan, with or without problems
+     */
+    public QueryPlans(Consumer<QueryPlan> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the fraction of new query fingerprints that are explained, each fingerprint is considered once. Defaults to 1
+     *
+     * @param sampleRate fraction between 0 and 1
+     * @return same QueryPlans instance
+     */
+    public QueryPlans sampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Tables small enough to be scanned, their full scans are not reported as problems
+     *
+     * @param tables table names, case insensitive
+     * @return same QueryPlans instance
+     */
+    public synchronized QueryPlans allowFullScan(String... tables) {
+        allowedScans.addAll(List.of(tables));
+        return this;
+    }
+
+    /**
+     * Plans with problems captured so far
+     *
+     * @return flagged plans in capture order
+     */
+    public List<QueryPlan> flagged() {
+        return List.copyOf(flagged);
+    }
+
+    /**
+     * Fails if any captured plan had problems, meant as a gate at the end of a test suite
+     *
+     * @throws DataAccessException listing the flagged queries
+     */
+    public void verify() {
+        if (flagged.isEmpty()) {
+            return;
+        }
+        var message = new StringBuilder("Queries with full scans or temporary sorts:");
+        for (var plan : flagged) {
+            message.append("\n  ").append(plan.sql()).append(" -> ").append(String.join("; ", plan.plan()));
+        }
+        throw new DataAccessException(message.toString());
+    }
+
+    /**
+     * Explains a statement about to be executed if its fingerprint is new and sampled
+     *
+     * @param conn       connection of the statement
+     * @param dialect    dialect providing the EXPLAIN syntax
+     * @param sql        query
+     * @param parameters parameters bound to the statement
+     * @return capture reporting the plan when closed after execution, null if the statement is not explained
+     */
+    AutoCloseable capture(Connection conn, Dialect dialect, String sql, Map<Integer, Object> parameters) {
+        if (sql == null || !explainable(sql) || seen.size() >= SEEN_LIMIT || !seen.add(AdaptiveFetchSize.fingerprint(sql))) {
+            return null;
+        }
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        try (var stmt = conn.prepareStatement(dialect.explain(sql))) {
+            for (var entry : parameters.entrySet()) {
+                PreparedStatementBuilder.bind(conn, stmt, entry.getKey(), entry.getValue());
+            }
+            try (var rs = stmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    lines.add(rs.getString(columns));
+                }
+            }
+        } catch (SQLException ex) {
+            return null;
+        }
+        long start = System.nanoTime();
+        return () -> report(QueryPlan.parse(sql, lines, Duration.ofNanos(System.nanoTime() - start)));
+    }
+
+    /**
+     * Reports a captured plan, removing allowed full scans first
+     *
+     * @param plan captured plan
+     */
+    private void report(QueryPlan plan) {
+        synchronized (this) {
+            if (!allowedScans.isEmpty()) {
+                var scans = plan.fullScans().stream().filter(table -> !allowedScans.contains(table)).toList();
+                plan = new QueryPlan(plan.sql(), plan.plan(), scans, plan.tempSort(), plan.elapsed());
+            }
+        }
+        if (plan.hasProblems()) {
+            flagged.add(plan);
+        }
+        listener.accept(plan);
+    }
+
+    /**
+     * Only queries, updates and deletes are explained
+     *
+     * @param sql statement
+     * @return true if the statement reads rows with a plan worth checking
+     */
+    private static boolean explainable(String sql) {
+        String start = sql.stripLeading();
+        int end = 0;
+        while (end < start.length() && Character.isLetter(start.charAt(end))) {
+            end++;
+        }
+        return switch (start.substring(0, end).toUpperCase(Locale.ROOT)) {
+            case "SELECT", "WITH", "UPDATE", "DELETE" -> true;
+            default -> false;
+        };
+    }
+}
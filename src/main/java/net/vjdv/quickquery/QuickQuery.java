@@ -6,6 +6,8 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 /**
@@ -69,4 +71,47 @@ public class QuickQuery {
         });
     }
 
+    /**
+     * Creates a new instance of ReplicatedDataAccess, SELECT queries are sent to the replicas and everything else to the primary
+     *
+     * @param primary  primary DataSource
+     * @param replicas read replica DataSources
+     * @return ReplicatedDataAccess instance
+     */
+    public static ReplicatedDataAccess fromDataSources(DataSource primary, DataSource... replicas) {
+        return new ReplicatedDataAccess(() -> {
+            try {
+                return primary.getConnection();
+            } catch (SQLException ex) {
+                throw new DataAccessException("Error getting connection from datasource", ex);
+            }
+        }, List.of(replicas));
+    }
+
+    /**
+     * Creates a new instance of ShardedDataAccess, the position of each DataSource is its shard index
+     *
+     * @param router chooses the shard of a key
+     * @param shards DataSource of every shard
+     * @return ShardedDataAccess instance
+     */
+    public static ShardedDataAccess sharded(ShardRouter router, DataSource... shards) {
+        List<DataAccess> list = new ArrayList<>();
+        for (var shard : shards) {
+            list.add(fromDataSource(shard));
+        }
+        return sharded(router, list);
+    }
+
+    /**
+     * Creates a new instance of ShardedDataAccess, the position of each DataAccess is its shard index
+     *
+     * @param router chooses the shard of a key
+     * @param shards DataAccess of every shard
+     * @return ShardedDataAccess instance
+     */
+    public static ShardedDataAccess sharded(ShardRouter router, List<DataAccess> shards) {
+        return new ShardedDataAccess(shards, router);
+    }
+
 }
@@ -0,0 +1,40 @@
+package net.vjdv.quickquery;
+
+/**
+ * Row mapper and parameter binder of a record class written as plain code, usually generated by the
+ * quickquery-processor for records annotated with {@link GenerateMapper}. An implementation is found by name: it is
+ * the binary name of the record followed by {@link #SUFFIX}, in the same package, public and with a public no-arg
+ * constructor. Column indexes are resolved once per result set, so rows are read by index without reflection
+ *
+ * @param <T> record type
+ */
+public interface RecordMapper<T> {
+    /**
+     * Suffix appended to the binary name of a record to find its mapper
+     */
+    String SUFFIX = "_QuickQueryMapper";
+
+    /**
+     * Column names of the record, one per component in declaration order
+     *
+     * @return column names, the array must not be modified
+     */
+    String[] columns();
+
+    /**
+     * Creates a record from the current row
+     *
+     * @param rs      the result set positioned on a row
+     * @param indexes index of each column returned by {@link #columns()}, in the same order
+     * @return the record instance
+     */
+    T map(ResultSetWrapper rs, int[] indexes);
+
+    /**
+     * Reads the components of a record, the values are converted to parameters by the caller
+     *
+     * @param record record instance
+     * @return component values in declaration order
+     */
+    Object[] values(T record);
+}
@@ -0,0 +1,146 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reflection helpers to read record components as query parameters, using the generated {@link RecordMapper} of a
+ * record when there is one
+ */
+final class Records {
+    private static final ClassValue<RecordComponent[]> COMPONENTS = new ClassValue<>() {
+        @Override
+        protected RecordComponent[] computeValue(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new DataAccessException("Class " + type.getName() + " is not a record");
+            }
+            return type.getRecordComponents();
+        }
+    };
+
+    private static final ClassValue<Optional<RecordMapper<?>>> GENERATED = new ClassValue<>() {
+        @Override
+        protected Optional<RecordMapper<?>> computeValue(Class<?> type) {
+            String name = type.getName() + RecordMapper.SUFFIX;
+            try {
+                var mapperClass = Class.forName(name, true, type.getClassLoader());
+                return Optional.of((RecordMapper<?>) mapperClass.getDeclaredConstructor().newInstance());
+            } catch (ClassNotFoundException ex) {
+                return Optional.empty();
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                throw new DataAccessException("Error loading generated mapper " + name, ex);
+            }
+        }
+    };
+
+    private Records() {
+    }
+
+    /**
+     * Returns the record components of a class, the array is cached and must not be modified
+     *
+     * @param type record class
+     * @return record components
+     */
+    static RecordComponent[] components(Class<?> type) {
+        return COMPONENTS.get(type);
+    }
+
+    /**
+     * Returns the generated mapper of a record class, looked up once per class
+     *
+     * @param type record class
+     * @param <T>  record type
+     * @return the generated mapper, null if the class has none
+     */
+    @SuppressWarnings("unchecked")
+    static <T> RecordMapper<T> generated(Class<T> type) {
+        return (RecordMapper<T>) GENERATED.get(type).orElse(null);
+    }
+
+    /**
+     * Reads the value of a record component converted to a parameter value
+     *
+     * @param record    record instance
+     * @param component component of the record class
+     * @return the parameter value
+     */
+    static Object value(Record record, RecordComponent component) {
+        try {
+            return toParameter(component.getAccessor().invoke(record));
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new DataAccessException("Error reading record component " + component.getName(), ex);
+        }
+    }
+
+    /**
+     * Reads every component of a record converted to parameter values
+     *
+     * @param record record instance
+     * @return component name to parameter value, in declaration order
+     */
+    static Map<String, Object> values(Record record) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        var generated = generated(record.getClass());
+        if (generated != null) {
+            String[] columns = generated.columns();
+            Object[] parameters = parameters(record);
+            for (int i = 0; i < columns.length; i++) {
+                values.put(columns[i], parameters[i]);
+            }
+            return values;
+        }
+        for (var component : components(record.getClass())) {
+            values.put(component.getName(), value(record, component));
+        }
+        return values;
+    }
+
+    /**
+     * Reads every component of a record converted to parameter values
+     *
+     * @param record record instance
+     * @return parameter values in declaration order
+     */
+    @SuppressWarnings("unchecked")
+    static Object[] parameters(Record record) {
+        var generated = (RecordMapper<Record>) generated(record.getClass());
+        if (generated != null) {
+            Object[] values = generated.values(record);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = toParameter(values[i]);
+            }
+            return values;
+        }
+        var components = components(record.getClass());
+        Object[] values = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            values[i] = value(record, components[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Converts a value the way the record mapper reads it back, date times are stored as utc millis
+     *
+     * @param value component value
+     * @return parameter value
+     */
+    static Object toParameter(Object value) {
+        if (value instanceof LocalDateTime x) {
+            return x.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } else if (value instanceof ZonedDateTime x) {
+            return x.toInstant().toEpochMilli();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,196 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory copy of a small, read-mostly table indexed by key. The whole table is loaded into an immutable snapshot
+ * that is replaced atomically on refresh, so lookups never touch the database nor block, even while a refresh runs.
+ * A failed refresh keeps serving the last good snapshot and is reported by {@link #lastError()}. Rows and keys must
+ * not be null
+ *
+ * @param <K> key type
+ * @param <T> row type
+ */
+public class ReferenceTable<K, T> implements AutoCloseable {
+    private final Supplier<List<T>> loader;
+    private final Function<? super T, ? extends K> keyOf;
+    private volatile Snapshot<K, T> snapshot;
+    private volatile RuntimeException lastError;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Creates a new instance of ReferenceTable, nothing is loaded until the first lookup or refresh
+     *
+     * @param loader reads every row of the table
+     * @param keyOf  key of a row
+     */
+    ReferenceTable(Supplier<List<T>> loader, Function<? super T, ? extends K> keyOf) {
+        this.loader = loader;
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * Returns the row with a key
+     *
+     * @param key key
+     * @return the row, empty if there is none
+     */
+    public Optional<T> get(K key) {
+        return Optional.ofNullable(current().byKey().get(key));
+    }
+
+    /**
+     * Returns every row in the order it was read
+     *
+     * @return immutable list of rows
+     */
+    public List<T> all() {
+        return current().rows();
+    }
+
+    /**
+     * Returns the rows indexed by key
+     *
+     * @return immutable map of rows by key
+     */
+    public Map<K, T> asMap() {
+        return current().byKey();
+    }
+
+    /**
+     * Number of rows in the snapshot
+     *
+     * @return row count
+     */
+    public int size() {
+        return current().rows().size();
+    }
+
+    /**
+     * When the current snapshot was loaded
+     *
+     * @return load time, empty if nothing has been loaded yet
+     */
+    public Optional<Instant> loadedAt() {
+        var current = snapshot;
+        return current == null ? Optional.empty() : Optional.of(current.loadedAt());
+    }
+
+    /**
+     * Error of the last refresh, cleared by a successful one
+     *
+     * @return last error, empty if the last refresh succeeded
+     */
+    public Optional<RuntimeException> lastError() {
+        return Optional.ofNullable(lastError);
+    }
+
+    /**
+     * Reloads the table and swaps the snapshot. On failure the previous snapshot is kept
+     *
+     * @return true if the table was reloaded
+     */
+    public boolean refresh() {
+        try {
+            load();
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reloads the table periodically on a daemon thread, starting after one interval
+     *
+     * @param interval time between refreshes
+     * @return same ReferenceTable instance
+     */
+    public synchronized ReferenceTable<K, T> refreshEvery(Duration interval) {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "quickquery-reference-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stops the periodic refresh, the last snapshot can still be read
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Returns the current snapshot, loading the table on first use
+     *
+     * @return snapshot
+     * @throws DataAccessException if the first load fails
+     */
+    private Snapshot<K, T> current() {
+        var current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reads the table and publishes a new snapshot, loads do not overlap
+     *
+     * @return the new snapshot
+     */
+    private synchronized Snapshot<K, T> load() {
+        try {
+            var rows = List.copyOf(loader.get());
+            var byKey = new HashMap<K, T>(rows.size() * 4 / 3 + 1);
+            for (T row : rows) {
+                byKey.put(keyOf.apply(row), row);
+            }
+            var loaded = new Snapshot<K, T>(Map.copyOf(byKey), rows, Instant.now());
+            snapshot = loaded;
+            lastError = null;
+            return loaded;
+        } catch (RuntimeException ex) {
+            lastError = ex;
+            throw ex;
+        }
+    }
+
+    /**
+     * Immutable content of the table at a point in time
+     *
+     * @param byKey    rows by key
+     * @param rows     rows in read order
+     * @param loadedAt load time
+     * @param <K>      key type
+     * @param <T>      row type
+     */
+    private record Snapshot<K, T>(Map<K, T> byKey, List<T> rows, Instant loadedAt) {
+    }
+}
@@ -0,0 +1,260 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Data access that sends SELECT queries to read replicas and everything else to the primary.
+ * Writes, generated keys, transactions and {@link CloseableAccess} always use the primary connection.
+ * Replica connections are borrowed for a single statement and closed once it has been executed.
+ */
+public class ReplicatedDataAccess extends DataAccess {
+    private final DataAccess primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+    private volatile Predicate<Connection> healthCheck = conn -> true;
+    private volatile Function<Connection, Duration> lagProbe;
+    private volatile Duration maxLag;
+    private ScheduledExecutorService checker;
+
+    /**
+     * Policies to choose the replica for a read
+     */
+    public enum LoadBalancing {
+        /**
+         * Cycles through the healthy replicas
+         */
+        ROUND_ROBIN,
+        /**
+         * Chooses the healthy replica with fewer statements in progress
+         */
+        LEAST_OUTSTANDING
+    }
+
+    /**
+     * Creates a new instance of ReplicatedDataAccess
+     *
+     * @param primarySupplier supplier of primary connections
+     * @param replicas        replica data sources
+     */
+    protected ReplicatedDataAccess(Supplier<Connection> primarySupplier, List<DataSource> replicas) {
+        super(primarySupplier);
+        this.primary = new DataAccess(primarySupplier);
+        for (var dataSource : replicas) {
+            this.replicas.add(new Replica(dataSource));
+        }
+    }
+
+    /**
+     * Sets the policy to choose the replica for a read, defaults to round-robin
+     *
+     * @param loadBalancing load balancing policy
+     * @return same ReplicatedDataAccess instance
+     */
+    public ReplicatedDataAccess loadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+        return this;
+    }
+
+    /**
+     * Sets the check run against a replica connection by {@link #checkReplicas()}, replicas failing it stop receiving reads
+     *
+     * @param healthCheck returns true if the replica can serve reads
+     * @return same ReplicatedDataAccess instance
+     */
+    public ReplicatedDataAccess healthCheck(Predicate<Connection> healthCheck) {
+        this.healthCheck = healthCheck;
+        return this;
+    }
+
+    /**
+     * Sets how replication lag is measured by {@link #checkReplicas()}, replicas lagging more than the maximum stop receiving reads
+     *
+     * @param lagProbe measures the lag of a replica connection
+     * @param maxLag   maximum lag allowed
+     * @return same ReplicatedDataAccess instance
+     */
+    public ReplicatedDataAccess lagProbe(Function<Connection, Duration> lagProbe, Duration maxLag) {
+        this.lagProbe = lagProbe;
+        this.maxLag = maxLag;
+        return this;
+    }
+
+    /**
+     * Runs {@link #checkReplicas()} periodically on a daemon thread
+     *
+     * @param interval time between checks
+     * @return same ReplicatedDataAccess instance
+     */
+    public synchronized ReplicatedDataAccess checkReplicasEvery(Duration interval) {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "quickquery-replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Runs the health check and lag probe on every replica and updates which replicas receive reads
+     */
+    public void checkReplicas() {
+        for (var replica : replicas) {
+            try (var conn = replica.dataSource.getConnection()) {
+                boolean healthy = healthCheck.test(conn);
+                if (healthy && lagProbe != null) {
+                    healthy = lagProbe.apply(conn).compareTo(maxLag) <= 0;
+                }
+                replica.healthy = healthy;
+            } catch (SQLException | RuntimeException ex) {
+                replica.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Data access bound to the primary, useful to read your own writes
+     *
+     * @return DataAccess for the primary
+     */
+    public DataAccess primary() {
+        return primary;
+    }
+
+    /**
+     * Number of replicas currently receiving reads
+     *
+     * @return healthy replicas count
+     */
+    public int healthyReplicas() {
+        int count = 0;
+        for (var replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a new PreparedStatementBuilder, SELECT queries use a replica when a healthy one is available
+     *
+     * @param sql query
+     * @return PreparedStatementBuilder
+     */
+    @Override
+    protected PreparedStatementBuilder prepare(String sql) {
+        if (isRead(sql)) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                var replica = choose();
+                if (replica == null) {
+                    break;
+                }
+                Connection conn;
+                try {
+                    conn = replica.dataSource.getConnection();
+                } catch (SQLException ex) {
+                    replica.healthy = false;
+                    continue;
+                }
+                return replica.prepare(conn, sql);
+            }
+        }
+        return super.prepare(sql);
+    }
+
+    /**
+     * Checks if a query can be served by a replica
+     *
+     * @param sql query
+     * @return true for SELECT queries without locking clauses
+     */
+    private static boolean isRead(String sql) {
+        var normalized = sql.stripLeading().toUpperCase(Locale.ROOT);
+        return normalized.startsWith("SELECT") && !normalized.contains(" FOR UPDATE") && !normalized.contains(" FOR SHARE");
+    }
+
+    /**
+     * Chooses a healthy replica according to the load balancing policy
+     *
+     * @return the replica or null if none is healthy
+     */
+    private Replica choose() {
+        int size = replicas.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), Math.max(size, 1));
+        Replica chosen = null;
+        for (int i = 0; i < size; i++) {
+            var replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            if (loadBalancing == LoadBalancing.ROUND_ROBIN) {
+                return replica;
+            }
+            if (chosen == null || replica.outstanding.get() < chosen.outstanding.get()) {
+                chosen = replica;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Replica state
+     */
+    private static class Replica {
+        private final DataSource dataSource;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Prepares a statement on a borrowed connection, the connection is closed once the statement has been executed
+         *
+         * @param conn replica connection
+         * @param sql  query
+         * @return PreparedStatementBuilder
+         */
+        PreparedStatementBuilder prepare(Connection conn, String sql) {
+            outstanding.incrementAndGet();
+            try {
+                var builder = new PreparedStatementBuilder(conn, conn.prepareStatement(sql), sql);
+                builder.attach(() -> {
+                    outstanding.decrementAndGet();
+                    conn.close();
+                });
+                return builder;
+            } catch (SQLException ex) {
+                outstanding.decrementAndGet();
+                try {
+                    conn.close();
+                } catch (SQLException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+                throw new DataAccessException("Error creating prepared statement", ex);
+            }
+        }
+    }
+
+}
@@ -2,15 +2,29 @@ package net.vjdv.quickquery;
 
 import net.vjdv.quickquery.exceptions.DataAccessException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.sql.*;
 import java.time.*;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 
 /**
  * Wrapper for ResultSet to mute exceptions, throws DataAccessException instead when reading values
  */
-public class ResultSetWrapper {
+public class ResultSetWrapper implements AutoCloseable {
     private final ResultSet rs;
+    private final StringPool pool;
+    private final Set<String> pooledColumns;
+    private boolean[] pooledIndexes;
+    private Runnable onClose;
+    private boolean closed;
 
     /**
      * Creates a new instance of ResultSetWrapper
@@ -18,7 +32,25 @@ public class ResultSetWrapper {
      * @param rs ResultSet
      */
     public ResultSetWrapper(ResultSet rs) {
+        this(rs, null);
+    }
+
+    /**
+     * Creates a new instance of ResultSetWrapper that deduplicates strings read with getString
+     *
+     * @param rs      ResultSet
+     * @param pool    pool used to deduplicate strings, null to disable
+     * @param columns columns to deduplicate, case insensitive; all columns when empty
+     */
+    public ResultSetWrapper(ResultSet rs, StringPool pool, String... columns) {
         this.rs = rs;
+        this.pool = pool;
+        if (pool == null || columns.length == 0) {
+            this.pooledColumns = null;
+        } else {
+            this.pooledColumns = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            this.pooledColumns.addAll(Set.of(columns));
+        }
     }
 
     /**
@@ -31,13 +63,79 @@ public class ResultSetWrapper {
     }
 
     /**
-     * Moves the cursor to the next row
+     * Sets an action run once when this wrapper is closed, used by the terminals handing out the result set
+     *
+     * @param onClose action to run after the result set is closed
+     * @return same ResultSetWrapper instance
+     */
+    ResultSetWrapper onClose(Runnable onClose) {
+        this.onClose = onClose;
+        return this;
+    }
+
+    /**
+     * Closes the wrapped ResultSet and releases what the statement holds, like a concurrency permit or a replica
+     * connection. Called automatically once the last row has been read
+     *
+     * @throws DataAccessException if a SQLException occurs
+     */
+    @Override
+    public void close() {
+        var action = onClose;
+        onClose = null;
+        closed = true;
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error closing result set", ex);
+        } finally {
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Maps a column label to its index
+     *
+     * @param column column label
+     * @return the column index
+     * @throws DataAccessException if the result set has no such column
+     */
+    public int findColumn(String column) {
+        try {
+            return rs.findColumn(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Column " + column + " not found", ex);
+        }
+    }
+
+    /**
+     * Identifies the rows this wrapper reads, so column indexes resolved for it can be reused
+     *
+     * @return the wrapped ResultSet
+     */
+    Object source() {
+        return rs;
+    }
+
+    /**
+     * Moves the cursor to the next row, the result set is closed once there are no more rows
      *
      * @return true if there is a next row
      */
     public boolean next() {
         try {
-            return rs.next();
+            if (closed) {
+                return false;
+            }
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            return true;
         } catch (SQLException ex) {
             throw new DataAccessException("Error getting next result", ex);
         }
@@ -133,6 +231,178 @@ public class ResultSetWrapper {
         }
     }
 
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a stream of uninterpreted bytes, the value is not copied into a byte array.
+     * The stream must be read before moving to the next row.
+     *
+     * @param column column name
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public InputStream getBinaryStream(String column) {
+        try {
+            return rs.getBinaryStream(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting binary stream from column " + column, ex);
+        }
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a stream of uninterpreted bytes, the value is not copied into a byte array.
+     * The stream must be read before moving to the next row.
+     *
+     * @param column column index
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public InputStream getBinaryStream(int column) {
+        try {
+            return rs.getBinaryStream(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting binary stream from column " + column, ex);
+        }
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a character stream, the value is not copied into a String.
+     * The reader must be consumed before moving to the next row.
+     *
+     * @param column column name
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public Reader getCharacterStream(String column) {
+        try {
+            return rs.getCharacterStream(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting character stream from column " + column, ex);
+        }
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a character stream, the value is not copied into a String.
+     * The reader must be consumed before moving to the next row.
+     *
+     * @param column column index
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public Reader getCharacterStream(int column) {
+        try {
+            return rs.getCharacterStream(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting character stream from column " + column, ex);
+        }
+    }
+
+    /**
+     * Writes the bytes of the designated column to a channel in fixed size chunks, the whole value is never held in memory
+     *
+     * @param column  column name
+     * @param channel target channel, it is not closed
+     * @return the number of bytes written; if the value is SQL NULL, the value returned is -1
+     * @throws DataAccessException if a SQLException or IOException occurs
+     */
+    public long transferTo(String column, WritableByteChannel channel) {
+        return transferTo(getBinaryStream(column), channel, column);
+    }
+
+    /**
+     * Writes the bytes of the designated column to a channel in fixed size chunks, the whole value is never held in memory
+     *
+     * @param column  column index
+     * @param channel target channel, it is not closed
+     * @return the number of bytes written; if the value is SQL NULL, the value returned is -1
+     * @throws DataAccessException if a SQLException or IOException occurs
+     */
+    public long transferTo(int column, WritableByteChannel channel) {
+        return transferTo(getBinaryStream(column), channel, column);
+    }
+
+    /**
+     * Reads the bytes of the designated column into a buffer, starting at its position, until the buffer is full or the value ends.
+     * Works with heap and direct buffers, the buffer position is advanced by the number of bytes read
+     *
+     * @param column column name
+     * @param target buffer to fill
+     * @return the number of bytes read; if the value is SQL NULL, the value returned is -1
+     * @throws DataAccessException if a SQLException or IOException occurs
+     */
+    public int read(String column, ByteBuffer target) {
+        return read(getBinaryStream(column), target, column);
+    }
+
+    /**
+     * Reads the bytes of the designated column into a buffer, starting at its position, until the buffer is full or the value ends.
+     * Works with heap and direct buffers, the buffer position is advanced by the number of bytes read
+     *
+     * @param column column index
+     * @param target buffer to fill
+     * @return the number of bytes read; if the value is SQL NULL, the value returned is -1
+     * @throws DataAccessException if a SQLException or IOException occurs
+     */
+    public int read(int column, ByteBuffer target) {
+        return read(getBinaryStream(column), target, column);
+    }
+
+    /**
+     * Copies a column stream to a channel using a small reusable chunk
+     *
+     * @param in      column stream, null for SQL NULL
+     * @param channel target channel
+     * @param column  column name or index for error messages
+     * @return the number of bytes written or -1 for SQL NULL
+     */
+    private static long transferTo(InputStream in, WritableByteChannel channel, Object column) {
+        if (in == null) {
+            return -1;
+        }
+        try (in) {
+            ReadableByteChannel source = Channels.newChannel(in);
+            ByteBuffer chunk = ByteBuffer.allocate(8192);
+            long total = 0;
+            while (source.read(chunk) != -1) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    total += channel.write(chunk);
+                }
+                chunk.clear();
+            }
+            return total;
+        } catch (IOException ex) {
+            throw new DataAccessException("Error transferring bytes from column " + column, ex);
+        }
+    }
+
+    /**
+     * Fills a buffer from a column stream
+     *
+     * @param in     column stream, null for SQL NULL
+     * @param target buffer to fill
+     * @param column column name or index for error messages
+     * @return the number of bytes read or -1 for SQL NULL
+     */
+    private static int read(InputStream in, ByteBuffer target, Object column) {
+        if (in == null) {
+            return -1;
+        }
+        try (in) {
+            int start = target.position();
+            if (target.hasArray()) {
+                int n = in.readNBytes(target.array(), target.arrayOffset() + start, target.remaining());
+                target.position(start + n);
+            } else {
+                ReadableByteChannel source = Channels.newChannel(in);
+                while (target.hasRemaining() && source.read(target) != -1) {
+                    // keep reading until the buffer is full or the value ends
+                }
+            }
+            return target.position() - start;
+        } catch (IOException ex) {
+            throw new DataAccessException("Error reading bytes from column " + column, ex);
+        }
+    }
+
     /**
      * Retrieves the value of the designated column in the current row of this ResultSet object as a Date object.
      *
@@ -262,7 +532,11 @@ public class ResultSetWrapper {
      */
     public String getString(String column) {
         try {
-            return rs.getString(column);
+            String value = rs.getString(column);
+            if (pool != null && (pooledColumns == null || pooledColumns.contains(column))) {
+                return pool.dedup(value);
+            }
+            return value;
         } catch (SQLException ex) {
             throw new DataAccessException("Error getting string from column " + column, ex);
         }
@@ -277,7 +551,11 @@ public class ResultSetWrapper {
      */
     public String getString(int column) {
         try {
-            return rs.getString(column);
+            String value = rs.getString(column);
+            if (pool != null && isPooled(column)) {
+                return pool.dedup(value);
+            }
+            return value;
         } catch (SQLException ex) {
             throw new DataAccessException("Error getting string from column " + column, ex);
         }
@@ -316,6 +594,39 @@ public class ResultSetWrapper {
         return x.withZoneSameInstant(zoneId);
     }
 
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a ZonedDateTime, the original value is a long representing milliseconds since epoch utc
+     *
+     * @param column column index
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public ZonedDateTime getZonedDateTimeLong(int column) {
+        try {
+            var millis = rs.getLong(column);
+            if (rs.wasNull()) {
+                return null;
+            }
+            return Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting localdatetime from column " + column, ex);
+        }
+    }
+
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as a ZonedDateTime, the original value is a long representing milliseconds since epoch utc
+     *
+     * @param column column index
+     * @param zoneId the zone id to convert the ZonedDateTime to
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public ZonedDateTime getZonedDateTimeLong(int column, ZoneId zoneId) {
+        var x = getZonedDateTimeLong(column);
+        if (x == null) return null;
+        return x.withZoneSameInstant(zoneId);
+    }
+
     /**
      * Retrieves the value of the designated column in the current row of this ResultSet object as a LocalDateTime, the original value is a long representing milliseconds since epoch
      *
@@ -378,6 +689,21 @@ public class ResultSetWrapper {
         }
     }
 
+    /**
+     * Retrieves the value of the designated column in the current row of this ResultSet object as an Object.
+     *
+     * @param column column name
+     * @return the column value; if the value is SQL NULL, the value returned is null
+     * @throws DataAccessException if a SQLException occurs
+     */
+    public Object getObject(String column) {
+        try {
+            return rs.getObject(column);
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error getting object from column " + column, ex);
+        }
+    }
+
     /**
      * Retrieves the value of the designated column in the current row of this ResultSet object as an Object.
      *
@@ -541,4 +867,26 @@ public class ResultSetWrapper {
             consumer.accept(this);
         }
     }
+
+    /**
+     * Whether strings of a column index are deduplicated, column labels are resolved once per result set
+     *
+     * @param column column index
+     * @return true if the column is pooled
+     * @throws SQLException if metadata cannot be read
+     */
+    private boolean isPooled(int column) throws SQLException {
+        if (pooledColumns == null) {
+            return true;
+        }
+        if (pooledIndexes == null) {
+            var metadata = rs.getMetaData();
+            var indexes = new boolean[metadata.getColumnCount() + 1];
+            for (int i = 1; i < indexes.length; i++) {
+                indexes[i] = pooledColumns.contains(metadata.getColumnLabel(i));
+            }
+            pooledIndexes = indexes;
+        }
+        return column < pooledIndexes.length && pooledIndexes[column];
+    }
 }
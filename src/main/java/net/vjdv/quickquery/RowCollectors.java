@@ -0,0 +1,161 @@
+package net.vjdv.quickquery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Primitive specialized collectors for {@link PreparedStatementExecutor#collect(Collector)}. They read the values
+ * they need from each row as it arrives, so they can be used with the identity mapper over the reused
+ * {@link ResultSetWrapper} and memory grows with the number of groups, not the number of rows
+ */
+public final class RowCollectors {
+
+    private RowCollectors() {
+    }
+
+    /**
+     * Sums a long value grouped by a long key, also counting the rows of each group
+     *
+     * @param key   extracts the group key
+     * @param value extracts the value to sum
+     * @param <T>   type of the rows
+     * @return collector to a LongSumMap
+     */
+    public static <T> Collector<T, ?, LongSumMap> sumByLong(ToLongFunction<? super T> key, ToLongFunction<? super T> value) {
+        return Collector.of(
+                () -> new LongSumMap(16),
+                (map, row) -> map.add(key.applyAsLong(row), value.applyAsLong(row)),
+                LongSumMap::merge,
+                Collector.Characteristics.IDENTITY_FINISH,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Counts the rows grouped by a long key, the sum of each group equals its count
+     *
+     * @param key extracts the group key
+     * @param <T> type of the rows
+     * @return collector to a LongSumMap
+     */
+    public static <T> Collector<T, ?, LongSumMap> countByLong(ToLongFunction<? super T> key) {
+        return sumByLong(key, row -> 1);
+    }
+
+    /**
+     * Keeps the n rows with the highest score in a bounded min-heap of primitive scores. The item is only built for
+     * rows that enter the heap, so rows below the current threshold cost a single score read
+     *
+     * @param n     number of rows to keep
+     * @param score extracts the score of a row
+     * @param item  builds the kept item from a row
+     * @param <T>   type of the rows
+     * @param <R>   type of the kept items
+     * @return collector to a list sorted by descending score
+     */
+    public static <T, R> Collector<T, ?, List<R>> topN(int n, ToLongFunction<? super T> score, Function<? super T, R> item) {
+        return Collector.of(
+                () -> new TopN<R>(n),
+                (heap, row) -> {
+                    long value = score.applyAsLong(row);
+                    if (heap.accepts(value)) {
+                        heap.offer(value, item.apply(row));
+                    }
+                },
+                (a, b) -> {
+                    for (int i = 0; i < b.size; i++) {
+                        if (a.accepts(b.scores[i])) {
+                            a.offer(b.scores[i], b.items.get(i));
+                        }
+                    }
+                    return a;
+                },
+                TopN::toList);
+    }
+
+    /**
+     * Min-heap of scores with their items in parallel storage
+     *
+     * @param <R> type of the items
+     */
+    private static final class TopN<R> {
+        private final long[] scores;
+        private final List<R> items;
+        private int size;
+
+        TopN(int n) {
+            this.scores = new long[n];
+            this.items = new ArrayList<>(n);
+        }
+
+        /**
+         * Whether a score would enter the heap
+         *
+         * @param score row score
+         * @return true if the heap is not full or the score beats the minimum
+         */
+        boolean accepts(long score) {
+            return scores.length > 0 && (size < scores.length || score > scores[0]);
+        }
+
+        /**
+         * Adds an item, replacing the minimum when the heap is full
+         *
+         * @param score item score
+         * @param item  item
+         */
+        void offer(long score, R item) {
+            int i;
+            if (size < scores.length) {
+                i = size++;
+                items.add(item);
+                while (i > 0 && scores[(i - 1) / 2] > score) {
+                    int parent = (i - 1) / 2;
+                    scores[i] = scores[parent];
+                    items.set(i, items.get(parent));
+                    i = parent;
+                }
+            } else {
+                i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && scores[child + 1] < scores[child]) {
+                        child++;
+                    }
+                    if (scores[child] >= score) {
+                        break;
+                    }
+                    scores[i] = scores[child];
+                    items.set(i, items.get(child));
+                    i = child;
+                }
+            }
+            scores[i] = score;
+            items.set(i, item);
+        }
+
+        /**
+         * Drains the heap
+         *
+         * @return items sorted by descending score
+         */
+        List<R> toList() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(scores[b], scores[a]));
+            List<R> result = new ArrayList<>(size);
+            for (int i : order) {
+                result.add(items.get(i));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package net.vjdv.quickquery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Writes rows from a ResultSet as CSV or JSON lines, encoding UTF-8 into a single reused buffer
+ */
+final class RowExporter {
+    private static final int TEXT = 0;
+    private static final int INTEGER = 1;
+    private static final int DECIMAL = 2;
+    private static final int FLOATING = 3;
+    private static final int BOOLEAN = 4;
+    private static final int BINARY = 5;
+
+    private final ResultSet rs;
+    private final StatementTimer timer;
+    private final ExportOptions options;
+    private final Sink sink;
+    private final byte[] buffer;
+    private final byte[] digits = new byte[20];
+    private int position;
+
+    /**
+     * Destination of the encoded bytes
+     */
+    interface Sink {
+        void write(byte[] bytes, int length) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * Creates a new instance of RowExporter
+     *
+     * @param rs      result set positioned before the first row
+     * @param timer   timer of the statement, times the fetches and enforces the deadline
+     * @param options export options
+     * @param sink    destination of the encoded bytes
+     */
+    RowExporter(ResultSet rs, StatementTimer timer, ExportOptions options, Sink sink) {
+        this.rs = rs;
+        this.timer = timer;
+        this.options = options;
+        this.sink = sink;
+        this.buffer = new byte[options.getBufferSize()];
+    }
+
+    /**
+     * Creates a sink writing to an output stream
+     *
+     * @param out output stream, it is flushed but not closed
+     * @return Sink
+     */
+    static Sink sink(OutputStream out) {
+        return new Sink() {
+            @Override
+            public void write(byte[] bytes, int length) throws IOException {
+                out.write(bytes, 0, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Creates a sink writing to a channel
+     *
+     * @param channel channel, it is not closed
+     * @return Sink
+     */
+    static Sink sink(WritableByteChannel channel) {
+        return new Sink() {
+            private ByteBuffer wrapper;
+
+            @Override
+            public void write(byte[] bytes, int length) throws IOException {
+                if (wrapper == null || wrapper.array() != bytes) {
+                    wrapper = ByteBuffer.wrap(bytes);
+                }
+                wrapper.clear().limit(length);
+                while (wrapper.hasRemaining()) {
+                    channel.write(wrapper);
+                }
+            }
+
+            @Override
+            public void flush() {
+                // channels write straight through
+            }
+        };
+    }
+
+    /**
+     * Writes every remaining row of the result set
+     *
+     * @return the number of rows written
+     * @throws SQLException if reading the result set fails
+     * @throws IOException  if writing fails
+     */
+    long export() throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        String[] labels = options.getColumns();
+        if (labels == null) {
+            labels = new String[meta.getColumnCount()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = meta.getColumnLabel(i + 1);
+            }
+        }
+        int[] columns = new int[labels.length];
+        int[] kinds = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            columns[i] = rs.findColumn(labels[i]);
+            kinds[i] = kindOf(meta.getColumnType(columns[i]));
+        }
+        boolean json = options.getFormat() == ExportOptions.Format.JSON_LINES;
+        byte separator = json ? (byte) ',' : (byte) options.getDelimiter();
+        byte[][] keys = new byte[labels.length][];
+        if (json) {
+            for (int i = 0; i < labels.length; i++) {
+                keys[i] = encodeKey(labels[i]);
+            }
+        } else if (options.isHeader()) {
+            for (int i = 0; i < labels.length; i++) {
+                if (i > 0) {
+                    writeByte(separator);
+                }
+                writeCsvText(labels[i]);
+            }
+            writeByte((byte) '\n');
+        }
+        int flushEvery = options.getFlushEvery();
+        long rows = 0;
+        while (timer.next(rs)) {
+            if (json) {
+                writeByte((byte) '{');
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    writeByte(separator);
+                }
+                if (json) {
+                    writeBytes(keys[i]);
+                }
+                writeValue(columns[i], kinds[i], json);
+            }
+            if (json) {
+                writeByte((byte) '}');
+            }
+            writeByte((byte) '\n');
+            rows++;
+            if (flushEvery > 0 && rows % flushEvery == 0) {
+                drain();
+                sink.flush();
+            }
+        }
+        drain();
+        sink.flush();
+        return rows;
+    }
+
+    /**
+     * Classifies a JDBC type to choose how the value is read and written
+     *
+     * @param sqlType type from java.sql.Types
+     * @return one of the kind constants
+     */
+    private static int kindOf(int sqlType) {
+        return switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> INTEGER;
+            case Types.NUMERIC, Types.DECIMAL -> DECIMAL;
+            case Types.FLOAT, Types.REAL, Types.DOUBLE -> FLOATING;
+            case Types.BIT, Types.BOOLEAN -> BOOLEAN;
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> BINARY;
+            default -> TEXT;
+        };
+    }
+
+    /**
+     * Reads and writes a single value
+     *
+     * @param column column index
+     * @param kind   kind of the column
+     * @param json   true to write JSON, false for CSV
+     * @throws SQLException if reading fails
+     * @throws IOException  if writing fails
+     */
+    private void writeValue(int column, int kind, boolean json) throws SQLException, IOException {
+        switch (kind) {
+            case INTEGER -> {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    writeNull(json);
+                } else {
+                    writeLong(value);
+                }
+            }
+            case FLOATING -> {
+                double value = rs.getDouble(column);
+                if (rs.wasNull() || (json && !Double.isFinite(value))) {
+                    writeNull(json);
+                } else {
+                    writeAscii(Double.toString(value));
+                }
+            }
+            case BOOLEAN -> {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    writeNull(json);
+                } else {
+                    writeAscii(value ? "true" : "false");
+                }
+            }
+            case DECIMAL -> {
+                String value = rs.getString(column);
+                if (value == null) {
+                    writeNull(json);
+                } else {
+                    writeAscii(value);
+                }
+            }
+            case BINARY -> {
+                byte[] value = rs.getBytes(column);
+                if (value == null) {
+                    writeNull(json);
+                } else {
+                    if (json) {
+                        writeByte((byte) '"');
+                    }
+                    writeBytes(Base64.getEncoder().encode(value));
+                    if (json) {
+                        writeByte((byte) '"');
+                    }
+                }
+            }
+            default -> {
+                String value = rs.getString(column);
+                if (value == null) {
+                    writeNull(json);
+                } else if (json) {
+                    writeJsonText(value);
+                } else {
+                    writeCsvText(value);
+                }
+            }
+        }
+    }
+
+    private void writeNull(boolean json) throws IOException {
+        if (json) {
+            writeAscii("null");
+        }
+    }
+
+    /**
+     * Encodes a JSON object key including the colon, keys are encoded once per export
+     *
+     * @param label column label
+     * @return encoded key
+     */
+    private static byte[] encodeKey(String label) {
+        var key = new StringBuilder(label.length() + 3).append('"');
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '"' || c == '\\') {
+                key.append('\\').append(c);
+            } else if (c < 0x20) {
+                key.append(String.format("\\u%04x", (int) c));
+            } else {
+                key.append(c);
+            }
+        }
+        return key.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeCsvText(String value) throws IOException {
+        char delimiter = options.getDelimiter();
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writeChars(value);
+            return;
+        }
+        writeByte((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writeByte((byte) '"');
+            }
+            i = writeChar(value, i);
+        }
+        writeByte((byte) '"');
+    }
+
+    private void writeJsonText(String value) throws IOException {
+        writeByte((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writeAscii("\\\"");
+                case '\\' -> writeAscii("\\\\");
+                case '\n' -> writeAscii("\\n");
+                case '\r' -> writeAscii("\\r");
+                case '\t' -> writeAscii("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writeAscii("\\u00");
+                        writeByte((byte) Character.forDigit(c >> 4, 16));
+                        writeByte((byte) Character.forDigit(c & 0xF, 16));
+                    } else {
+                        i = writeChar(value, i);
+                    }
+                }
+            }
+        }
+        writeByte((byte) '"');
+    }
+
+    private void writeChars(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            i = writeChar(value, i);
+        }
+    }
+
+    /**
+     * Encodes the char at the given index as UTF-8, consuming a surrogate pair if present
+     *
+     * @param value string being written
+     * @param i     index of the char
+     * @return index of the last char consumed
+     * @throws IOException if draining the buffer fails
+     */
+    private int writeChar(String value, int i) throws IOException {
+        if (position + 4 > buffer.length) {
+            drain();
+        }
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, value.charAt(++i));
+            buffer[position++] = (byte) (0xF0 | (cp >> 18));
+            buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            buffer[position++] = (byte) '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte((byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        while (n > 0) {
+            writeByte(digits[--n]);
+        }
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            writeByte((byte) value.charAt(i));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeByte(byte b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            sink.write(buffer, position);
+            position = 0;
+        }
+    }
+}
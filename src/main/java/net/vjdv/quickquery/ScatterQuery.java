@@ -0,0 +1,214 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Query prepared on every shard of a {@link ShardedDataAccess} and executed in parallel
+ */
+public class ScatterQuery {
+    private final ShardedDataAccess sharded;
+    private final String sql;
+    private Consumer<PreparedStatementBuilder> binder = builder -> {
+    };
+
+    /**
+     * Creates a new instance of ScatterQuery
+     *
+     * @param sharded sharded data access
+     * @param sql     query
+     */
+    ScatterQuery(ShardedDataAccess sharded, String sql) {
+        this.sharded = sharded;
+        this.sql = sql;
+    }
+
+    /**
+     * Sets the parameters of the query, the binder is applied to the statement of every shard
+     *
+     * @param binder sets the parameters of a statement
+     * @return same ScatterQuery instance
+     */
+    public ScatterQuery bind(Consumer<PreparedStatementBuilder> binder) {
+        this.binder = binder;
+        return this;
+    }
+
+    /**
+     * Set parameters from a map where the key is the parameter index and the value is the parameter value
+     *
+     * @param parameters a map of parameters
+     * @return same ScatterQuery instance
+     */
+    public ScatterQuery setParameters(Map<Integer, Object> parameters) {
+        return bind(builder -> builder.setParameters(parameters));
+    }
+
+    /**
+     * Sets a result mapper function used for the rows of every shard
+     *
+     * @param function the function to map the result
+     * @param <T>      the type of the result
+     * @return a ScatterExecutor instance
+     */
+    public <T> ScatterExecutor<T> resultMapper(Function<ResultSetWrapper, T> function) {
+        return new ScatterExecutor<>(function);
+    }
+
+    /**
+     * Uses a record class to map the rows of every shard, components name must match the column names
+     *
+     * @param clazz the record class
+     * @param <T>   the type of the record
+     * @return a ScatterExecutor instance
+     */
+    public <T> ScatterExecutor<T> resultMapper(Class<T> clazz) {
+        return resultMapper(PreparedStatementBuilder.recordMapper(clazz));
+    }
+
+    /**
+     * Prepares and binds the query on a shard
+     *
+     * @param shard shard data access
+     * @return PreparedStatementBuilder ready to execute
+     */
+    private PreparedStatementBuilder prepare(DataAccess shard) {
+        var builder = shard.query(sql);
+        binder.accept(builder);
+        return builder;
+    }
+
+    /**
+     * Executes a scatter query and gathers the rows of every shard
+     *
+     * @param <T> type of the result
+     */
+    public class ScatterExecutor<T> {
+        private final Function<ResultSetWrapper, T> function;
+
+        ScatterExecutor(Function<ResultSetWrapper, T> function) {
+            this.function = function;
+        }
+
+        /**
+         * Returns the rows of every shard, shards are queried in parallel and their rows concatenated in shard order
+         *
+         * @return list of items
+         */
+        public List<T> list() {
+            List<T> list = new ArrayList<>();
+            for (var shardList : sharded.onEveryShard(shard -> prepare(shard).resultMapper(function).list())) {
+                list.addAll(shardList);
+            }
+            return list;
+        }
+
+        /**
+         * Returns the rows of every shard merged in order, each shard must already return its rows sorted in the same order
+         *
+         * @param order the order of the rows, must match the ORDER BY of the query
+         * @param limit maximum number of rows to return
+         * @return merged list of items
+         */
+        public List<T> mergeSorted(Comparator<? super T> order, int limit) {
+            List<T> list = new ArrayList<>();
+            mergeSorted(order, limit, list::add);
+            return list;
+        }
+
+        /**
+         * Streams the rows of every shard merged in order with a k-way merge, each shard must already return its rows sorted in the same order.
+         * Only one row per shard is held in memory and shards are not read past the limit
+         *
+         * @param order    the order of the rows, must match the ORDER BY of the query
+         * @param limit    maximum number of rows to consume
+         * @param consumer action to execute for each row
+         * @return number of rows consumed
+         */
+        public long mergeSorted(Comparator<? super T> order, long limit, Consumer<T> consumer) {
+            List<Cursor> opened = Collections.synchronizedList(new ArrayList<>());
+            List<Cursor> cursors;
+            try {
+                cursors = sharded.onEveryShard(shard -> {
+                    var cursor = new Cursor(prepare(shard));
+                    opened.add(cursor);
+                    cursor.advance();
+                    return cursor;
+                });
+            } catch (DataAccessException ex) {
+                synchronized (opened) {
+                    for (var cursor : opened) {
+                        cursor.close();
+                    }
+                }
+                throw ex;
+            }
+            PriorityQueue<Cursor> queue = new PriorityQueue<>(cursors.size(), (a, b) -> order.compare(a.head, b.head));
+            try {
+                for (var cursor : cursors) {
+                    if (!cursor.exhausted) {
+                        queue.add(cursor);
+                    }
+                }
+                long count = 0;
+                while (count < limit && !queue.isEmpty()) {
+                    var cursor = queue.poll();
+                    consumer.accept(cursor.head);
+                    count++;
+                    if (count < limit && cursor.advance()) {
+                        queue.add(cursor);
+                    }
+                }
+                return count;
+            } finally {
+                for (var cursor : cursors) {
+                    cursor.close();
+                }
+            }
+        }
+
+        /**
+         * Open result set of a shard with its current row mapped
+         */
+        private class Cursor {
+            private final ResultSetWrapper rs;
+            private T head;
+            private boolean exhausted;
+
+            Cursor(PreparedStatementBuilder builder) {
+                this.rs = builder.executeQuery();
+            }
+
+            /**
+             * Moves to the next row of the shard
+             *
+             * @return true if there is a row
+             */
+            boolean advance() {
+                if (rs.next()) {
+                    head = function.apply(rs);
+                    return true;
+                }
+                head = null;
+                exhausted = true;
+                return false;
+            }
+
+            void close() {
+                try {
+                    rs.close();
+                } catch (DataAccessException ignored) {
+                    // rows have already been consumed, the statement is released anyway
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.vjdv.quickquery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NavigableMap;
+
+/**
+ * Chooses the shard that owns a key
+ */
+@FunctionalInterface
+public interface ShardRouter {
+
+    /**
+     * Returns the index of the shard that owns a key
+     *
+     * @param key shard key
+     * @return shard index
+     */
+    int route(Object key);
+
+    /**
+     * Creates a router using a consistent hash ring with 128 virtual nodes per shard
+     *
+     * @param shards number of shards
+     * @return ShardRouter
+     */
+    static ShardRouter consistentHash(int shards) {
+        return consistentHash(shards, 128);
+    }
+
+    /**
+     * Creates a router using a consistent hash ring, adding a shard only moves the keys taken by the new shard
+     *
+     * @param shards       number of shards
+     * @param virtualNodes points on the ring per shard, more points spread keys more evenly
+     * @return ShardRouter
+     */
+    static ShardRouter consistentHash(int shards, int virtualNodes) {
+        if (shards < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Shards and virtual nodes must be positive");
+        }
+        long[] entries = new long[shards * virtualNodes];
+        int[] owners = new int[entries.length];
+        long[][] pairs = new long[entries.length][];
+        for (int s = 0, i = 0; s < shards; s++) {
+            for (int v = 0; v < virtualNodes; v++, i++) {
+                pairs[i] = new long[]{hash("shard-" + s + "-" + v), s};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < pairs.length; i++) {
+            entries[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+        return key -> {
+            int i = Arrays.binarySearch(entries, hash(key));
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return owners[i == entries.length ? 0 : i];
+        };
+    }
+
+    /**
+     * Creates a router from key ranges, each entry maps the lowest key of a range to its shard
+     *
+     * @param lowerBounds lowest key of each range mapped to the shard index
+     * @param <K>         key type
+     * @return ShardRouter
+     */
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<K>> ShardRouter ranges(NavigableMap<K, Integer> lowerBounds) {
+        return key -> {
+            var entry = lowerBounds.floorEntry((K) key);
+            if (entry == null) {
+                throw new IllegalArgumentException("No shard range contains key " + key);
+            }
+            return entry.getValue();
+        };
+    }
+
+    /**
+     * Stable 64-bit hash of a key, independent of the JVM so keys route the same way across restarts
+     *
+     * @param key shard key
+     * @return hash
+     */
+    private static long hash(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return mix(((Number) key).longValue());
+        }
+        byte[] bytes;
+        if (key instanceof byte[] b) {
+            bytes = b;
+        } else {
+            bytes = String.valueOf(key).getBytes(StandardCharsets.UTF_8);
+        }
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreads the bits of a value
+     *
+     * @param h value
+     * @return mixed value
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
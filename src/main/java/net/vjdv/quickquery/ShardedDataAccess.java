@@ -0,0 +1,119 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Data access over several shards. Point queries and single-shard writes are routed by a shard key,
+ * other queries are sent to every shard in parallel with {@link #scatter(String)}.
+ */
+public class ShardedDataAccess {
+    private final List<DataAccess> shards;
+    private final ShardRouter router;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "quickquery-shard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new instance of ShardedDataAccess
+     *
+     * @param shards data access of every shard, the position in the list is the shard index
+     * @param router chooses the shard of a key
+     */
+    protected ShardedDataAccess(List<DataAccess> shards, ShardRouter router) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.router = router;
+    }
+
+    /**
+     * Returns the data access of the shard that owns a key, use it for point queries and writes
+     *
+     * @param key shard key
+     * @return DataAccess of the shard
+     */
+    public DataAccess shard(Object key) {
+        int index = router.route(key);
+        if (index < 0 || index >= shards.size()) {
+            throw new DataAccessException("Shard " + index + " for key " + key + " does not exist");
+        }
+        return shards.get(index);
+    }
+
+    /**
+     * Returns the data access of every shard
+     *
+     * @return unmodifiable list of shards
+     */
+    public List<DataAccess> shards() {
+        return shards;
+    }
+
+    /**
+     * Starts a query that runs on every shard
+     *
+     * @param sql query, the same SQL is prepared on each shard
+     * @return ScatterQuery
+     */
+    public ScatterQuery scatter(String sql) {
+        return new ScatterQuery(this, sql);
+    }
+
+    /**
+     * Runs a task for every shard in parallel and returns the results in shard order
+     *
+     * @param task task receiving a shard
+     * @param <R>  result type
+     * @return results in shard order
+     * @throws DataAccessException error of the first failed shard, with the errors of the other shards suppressed
+     */
+    <R> List<R> onEveryShard(ShardTask<R> task) {
+        List<Future<R>> futures = new ArrayList<>(shards.size());
+        for (var shard : shards) {
+            Callable<R> callable = () -> task.run(shard);
+            futures.add(executor.submit(callable));
+        }
+        List<R> results = new ArrayList<>(shards.size());
+        DataAccessException error = null;
+        for (var future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DataAccessException("Interrupted while querying shards", ex);
+            } catch (ExecutionException ex) {
+                var cause = ex.getCause() instanceof DataAccessException dae ? dae : new DataAccessException("Error querying shard", ex.getCause());
+                if (error == null) {
+                    error = cause;
+                } else {
+                    error.addSuppressed(cause);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    /**
+     * Task executed on a single shard
+     *
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    interface ShardTask<R> {
+        R run(DataAccess shard) throws Exception;
+    }
+}
@@ -0,0 +1,10 @@
+package net.vjdv.quickquery;
+
+/**
+ * Array parameter value, bound with {@link java.sql.Connection#createArrayOf(String, Object[])} when used in parameter maps
+ *
+ * @param typeName SQL name of the element type (e.g. "text", "bigint")
+ * @param elements array elements
+ */
+public record SqlArray(String typeName, Object[] elements) {
+}
@@ -0,0 +1,42 @@
+package net.vjdv.quickquery;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * SQLite dialect, inserts with multi-row VALUES statements inside a single transaction
+ */
+class SqliteDialect extends GenericDialect {
+    private static final int MAX_PARAMETERS = 999;
+
+    @Override
+    public String name() {
+        return "sqlite";
+    }
+
+    @Override
+    public boolean supports(String productName) {
+        return "SQLite".equalsIgnoreCase(productName);
+    }
+
+    @Override
+    public String limit(String sql, long limit, long offset) {
+        return sql + " LIMIT " + limit + (offset > 0 ? " OFFSET " + offset : "");
+    }
+
+    @Override
+    public long insertAll(Connection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        return inTransaction(conn, () -> multiRowInsert(conn, table, columns, rows, MAX_PARAMETERS));
+    }
+
+    @Override
+    public String explain(String sql) {
+        return "EXPLAIN QUERY PLAN " + sql;
+    }
+
+    @Override
+    public String upsertSql(String table, String[] columns, String[] keyColumns) {
+        return onConflictSql(table, columns, keyColumns, 1);
+    }
+}
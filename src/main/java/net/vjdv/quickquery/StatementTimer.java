@@ -0,0 +1,183 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+import net.vjdv.quickquery.exceptions.LimitExceededException;
+import net.vjdv.quickquery.exceptions.QueryTimeoutException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the deadline of a statement: sets the driver query timeout, cancels the statement when the deadline passes
+ * and turns the resulting errors into {@link QueryTimeoutException}. Without deadline every operation is a no-op.
+ * With a concurrency limiter it also holds the slot of the statement from execution until it is closed, reporting only
+ * the time spent executing and fetching rows as latency
+ */
+final class StatementTimer implements AutoCloseable {
+    private static final ScheduledThreadPoolExecutor SCHEDULER = scheduler();
+    private final Statement stmt;
+    private final Deadline deadline;
+    private final ConcurrencyLimiter limiter;
+    private volatile boolean fired;
+    private ScheduledFuture<?> cancellation;
+    private ConcurrencyLimiter.Permit permit;
+    private long busyNanos;
+    private long runningSince;
+
+    /**
+     * Creates a new instance of StatementTimer
+     *
+     * @param stmt     statement to cancel
+     * @param deadline deadline, null for none
+     */
+    StatementTimer(Statement stmt, Deadline deadline) {
+        this(stmt, deadline, null);
+    }
+
+    /**
+     * Creates a new instance of StatementTimer
+     *
+     * @param stmt     statement to cancel
+     * @param deadline deadline, null for none
+     * @param limiter  limiter granting the slot of the statement, null for none
+     */
+    StatementTimer(Statement stmt, Deadline deadline, ConcurrencyLimiter limiter) {
+        this.stmt = stmt;
+        this.deadline = deadline;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Called right before executing the statement, takes the limiter slot, sets the query timeout to the remaining time
+     * and schedules the cancel
+     *
+     * @throws LimitExceededException if no limiter slot is available
+     * @throws QueryTimeoutException  if the deadline has already passed
+     */
+    void start() {
+        if (limiter != null && permit == null) {
+            permit = limiter.acquire();
+        }
+        runningSince = System.nanoTime();
+        if (deadline == null || cancellation != null) {
+            return;
+        }
+        long remaining = deadline.remaining().toNanos();
+        if (remaining <= 0) {
+            fired = true;
+            throw new QueryTimeoutException("Deadline passed before the statement was executed");
+        }
+        try {
+            stmt.setQueryTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999L)));
+        } catch (SQLException ignored) {
+            // drivers without query timeout still get the scheduled cancel
+        }
+        cancellation = SCHEDULER.schedule(this::cancel, remaining, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called once the statement has been executed, stops counting time until the next fetch
+     */
+    void pause() {
+        if (runningSince != 0) {
+            busyNanos += System.nanoTime() - runningSince;
+            runningSince = 0;
+        }
+    }
+
+    /**
+     * Moves to the next row counting the fetch as statement time, then enforces the deadline
+     *
+     * @param rs result set
+     * @return true if there is a row
+     * @throws SQLException          if the row cannot be fetched
+     * @throws QueryTimeoutException if the deadline passed
+     */
+    boolean next(ResultSet rs) throws SQLException {
+        runningSince = System.nanoTime();
+        boolean more = rs.next();
+        pause();
+        if (more) {
+            check();
+        }
+        return more;
+    }
+
+    /**
+     * Called while reading rows, cancels the statement if the deadline passed
+     *
+     * @throws QueryTimeoutException if the deadline passed
+     */
+    void check() {
+        if (deadline != null && deadline.isExpired()) {
+            cancel();
+            throw new QueryTimeoutException("Deadline passed while reading rows");
+        }
+    }
+
+    /**
+     * Translates an error of the statement
+     *
+     * @param message message for errors not caused by the deadline
+     * @param ex      the error
+     * @return QueryTimeoutException if the statement timed out or was cancelled by the deadline, DataAccessException otherwise
+     */
+    DataAccessException fail(String message, Exception ex) {
+        if (ex instanceof QueryTimeoutException timeout) {
+            return timeout;
+        }
+        if (fired || ex instanceof SQLTimeoutException) {
+            return new QueryTimeoutException("Statement cancelled after exceeding its deadline", ex);
+        }
+        if (ex instanceof DataAccessException dae) {
+            return dae;
+        }
+        return new DataAccessException(message, ex);
+    }
+
+    /**
+     * Cancels the scheduled cancel once the statement completed and releases the limiter slot
+     */
+    @Override
+    public void close() {
+        pause();
+        if (cancellation != null) {
+            cancellation.cancel(false);
+        }
+        if (permit != null) {
+            permit.close(busyNanos);
+        }
+    }
+
+    /**
+     * Cancels the statement, errors are ignored since it may have completed meanwhile
+     */
+    private void cancel() {
+        fired = true;
+        try {
+            stmt.cancel();
+        } catch (SQLException ignored) {
+            // the statement already completed or was closed
+        }
+    }
+
+    /**
+     * Creates the daemon scheduler shared by all statements
+     *
+     * @return scheduler
+     */
+    private static ScheduledThreadPoolExecutor scheduler() {
+        var scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            var thread = new Thread(runnable, "quickquery-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
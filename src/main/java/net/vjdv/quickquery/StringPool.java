@@ -0,0 +1,90 @@
+package net.vjdv.quickquery;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool that replaces equal strings with a single shared instance, useful for low cardinality columns
+ * like status or country codes that repeat across millions of rows. Each slot keeps the last string hashed to it,
+ * so memory is fixed and no locking is needed; a collision only costs a miss
+ */
+public class StringPool {
+    private final String[] slots;
+    private final int mask;
+    private final int maxLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a pool with 4096 slots for strings up to 64 chars
+     */
+    public StringPool() {
+        this(4096, 64);
+    }
+
+    /**
+     * Creates a new instance of StringPool
+     *
+     * @param capacity  number of slots, rounded up to a power of two
+     * @param maxLength longer strings are returned as they are
+     */
+    public StringPool(int capacity, int maxLength) {
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new String[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the pooled instance equal to the given string, pooling it if there is none
+     *
+     * @param value string to deduplicate, may be null
+     * @return an equal string, shared when possible
+     */
+    public String dedup(String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        int h = value.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        String pooled = slots[slot];
+        if (value.equals(pooled)) {
+            hits.increment();
+            return pooled;
+        }
+        slots[slot] = value;
+        misses.increment();
+        return value;
+    }
+
+    /**
+     * Number of strings replaced by a pooled instance
+     *
+     * @return hit count
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of strings that were not in the pool
+     *
+     * @return miss count
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Ratio of hits over all pooled lookups
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
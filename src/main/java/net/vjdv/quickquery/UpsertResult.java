@@ -0,0 +1,11 @@
+package net.vjdv.quickquery;
+
+/**
+ * Aggregate counts of a bulk upsert, a count is -1 when the driver does not report it
+ *
+ * @param affected number of rows inserted or updated
+ * @param inserted number of rows inserted
+ * @param updated  number of existing rows updated
+ */
+public record UpsertResult(long affected, long inserted, long updated) {
+}
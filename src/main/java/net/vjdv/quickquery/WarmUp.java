@@ -0,0 +1,266 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.quickquery.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the statements and record classes an application uses, warmed up at startup by
+ * {@link DataAccess#warmUp(WarmUp)} so the first requests do not pay for class loading, record reflection and statement
+ * preparation. Record mappers are built once and cached, statements are prepared on every connection taken for the
+ * warm-up and registered dry runs are executed, reading and discarding their rows. Failures are reported, not thrown
+ */
+public class WarmUp {
+    private final Set<String> statements = new LinkedHashSet<>();
+    private final Set<Class<?>> records = new LinkedHashSet<>();
+    private final Map<String, Object[]> dryRuns = new HashMap<>();
+    private int connections = 1;
+    private int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Creates a new instance of WarmUp
+     */
+    public WarmUp() {
+    }
+
+    /**
+     * Registers statements to prepare
+     *
+     * @param sql statements
+     * @return same WarmUp instance
+     */
+    public WarmUp statements(String... sql) {
+        statements.addAll(List.of(sql));
+        return this;
+    }
+
+    /**
+     * Registers record classes whose mappers are built
+     *
+     * @param recordClasses record classes used with {@code resultMapper(Class)} or {@code select(Class)}
+     * @return same WarmUp instance
+     */
+    public WarmUp records(Class<?>... recordClasses) {
+        records.addAll(List.of(recordClasses));
+        return this;
+    }
+
+    /**
+     * Registers a query executed during the warm-up, its rows are read and discarded. Meant for reads, it is also
+     * prepared on every connection
+     *
+     * @param sql        query
+     * @param parameters values of its parameters in order
+     * @return same WarmUp instance
+     */
+    public WarmUp dryRun(String sql, Object... parameters) {
+        statements.add(sql);
+        dryRuns.put(sql, parameters);
+        return this;
+    }
+
+    /**
+     * Sets how many connections are taken to prepare the statements on, usually the pool size. A single shared
+     * connection is detected and warmed once. Defaults to 1
+     *
+     * @param connections number of connections
+     * @return same WarmUp instance
+     */
+    public WarmUp connections(int connections) {
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used, defaults to the number of processors up to 4
+     *
+     * @param parallelism number of threads
+     * @return same WarmUp instance
+     */
+    public WarmUp parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Runs the warm-up. Connections are taken at once so a pool hands out different ones; when the supplier returns
+     * the same connection twice it is shared and kept open, otherwise the connections are closed before the dry runs,
+     * returning them to their pool
+     *
+     * @param dataAccess data access to warm up
+     * @return report of the warm-up
+     */
+    Report run(DataAccess dataAccess) {
+        long start = System.nanoTime();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Connection> taken = new ArrayList<>();
+        boolean shared = false;
+        var executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            var thread = new Thread(r, "quickquery-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < Math.max(2, connections) && !shared; i++) {
+                var conn = dataAccess.getConnection();
+                shared = taken.stream().anyMatch(c -> c == conn);
+                if (!shared) {
+                    taken.add(conn);
+                }
+            }
+            int warmed = Math.min(connections, taken.size());
+            var mappers = new AtomicInteger();
+            var prepared = new AtomicInteger();
+            List<Future<?>> tasks = new ArrayList<>();
+            for (var recordClass : records) {
+                tasks.add(executor.submit(step(failures, "record " + recordClass.getName(), () -> {
+                    PreparedStatementBuilder.recordMapper(recordClass);
+                    mappers.incrementAndGet();
+                })));
+            }
+            for (var conn : taken.subList(0, warmed)) {
+                tasks.add(executor.submit(() -> {
+                    for (String sql : statements) {
+                        step(failures, "prepare " + sql, () -> {
+                            prepare(conn, sql);
+                            prepared.incrementAndGet();
+                        }).run();
+                    }
+                }));
+            }
+            await(tasks);
+            if (!shared) {
+                close(taken);
+            }
+            var executed = new AtomicInteger();
+            for (var dryRun : dryRuns.entrySet()) {
+                var step = step(failures, "dry run " + dryRun.getKey(), () -> {
+                    execute(dataAccess, dryRun.getKey(), dryRun.getValue());
+                    executed.incrementAndGet();
+                });
+                if (shared) {
+                    step.run();
+                } else {
+                    tasks.add(executor.submit(step));
+                }
+            }
+            await(tasks);
+            return new Report(Duration.ofNanos(System.nanoTime() - start), warmed, prepared.get(), mappers.get(), executed.get(), List.copyOf(failures));
+        } finally {
+            executor.shutdownNow();
+            if (!shared) {
+                close(taken);
+            }
+        }
+    }
+
+    /**
+     * Waits for submitted steps
+     *
+     * @param tasks submitted steps, cleared afterwards
+     */
+    private static void await(List<Future<?>> tasks) {
+        try {
+            for (var future : tasks) {
+                future.get();
+            }
+            tasks.clear();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while warming up", ex);
+        } catch (ExecutionException ex) {
+            throw new DataAccessException("Error warming up", ex.getCause());
+        }
+    }
+
+    /**
+     * Closes the connections taken for the warm-up, returning them to their pool
+     *
+     * @param taken connections, cleared afterwards
+     */
+    private static void close(List<Connection> taken) {
+        for (var conn : taken) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // the connection is returned to its pool or discarded either way
+            }
+        }
+        taken.clear();
+    }
+
+    /**
+     * Prepares and closes a statement so the driver and database parse and cache it
+     *
+     * @param conn connection
+     * @param sql  statement
+     */
+    private static void prepare(Connection conn, String sql) {
+        try {
+            conn.prepareStatement(sql).close();
+        } catch (SQLException ex) {
+            throw new DataAccessException("Error preparing statement", ex);
+        }
+    }
+
+    /**
+     * Executes a dry run, its rows are read and discarded
+     *
+     * @param dataAccess data access
+     * @param sql        query
+     * @param parameters values of its parameters in order
+     */
+    private static void execute(DataAccess dataAccess, String sql, Object[] parameters) {
+        var indexed = new HashMap<Integer, Object>();
+        for (int i = 0; i < parameters.length; i++) {
+            indexed.put(i + 1, parameters[i]);
+        }
+        dataAccess.query(sql).setParameters(indexed).resultMapper(rs -> null).forEach(row -> {
+        });
+    }
+
+    /**
+     * Wraps a warm-up step so its failure is reported instead of thrown
+     *
+     * @param failures collected failures
+     * @param name     step name for the report
+     * @param step     step to run
+     * @return step recording its failure
+     */
+    private static Runnable step(List<String> failures, String name, Runnable step) {
+        return () -> {
+            try {
+                step.run();
+            } catch (RuntimeException ex) {
+                var cause = ex.getCause() == null ? ex : ex.getCause();
+                failures.add(name + ": " + cause.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Result of a warm-up
+     *
+     * @param elapsed     time the warm-up took
+     * @param connections connections the statements were prepared on
+     * @param prepared    statements prepared, counted once per connection
+     * @param mappers     record mappers built
+     * @param executed    dry runs executed
+     * @param failures    description of each failed step
+     */
+    public record Report(Duration elapsed, int connections, int prepared, int mappers, int executed, List<String> failures) {
+    }
+}
@@ -0,0 +1,153 @@
+package net.vjdv.quickquery;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Polls a table for changed rows using a monotonic watermark column, such as an update timestamp or a version number,
+ * plus a unique key column to break ties. Each poll reads only the rows after the last delivered (watermark, key) pair,
+ * ordered by both columns, so rows sharing the watermark of the last delivered row are neither skipped nor repeated
+ * even when a page ends in the middle of them. Writers must assign watermarks that never go back in commit order;
+ * deleted rows are not detected
+ *
+ * @param <T> type of the rows
+ */
+public class WatermarkLoader<T> {
+    private final DataAccess dataAccess;
+    private final String table;
+    private final String watermarkColumn;
+    private final String keyColumn;
+    private final Function<ResultSetWrapper, T> mapper;
+    private int batchSize = 1000;
+    private Object watermark;
+    private Object key;
+
+    /**
+     * Creates a new instance of WatermarkLoader
+     *
+     * @param dataAccess      data access
+     * @param table           table name
+     * @param watermarkColumn monotonic column
+     * @param keyColumn       unique column breaking ties in the watermark
+     * @param mapper          row mapper
+     */
+    WatermarkLoader(DataAccess dataAccess, String table, String watermarkColumn, String keyColumn, Function<ResultSetWrapper, T> mapper) {
+        this.dataAccess = dataAccess;
+        this.table = table;
+        this.watermarkColumn = watermarkColumn;
+        this.keyColumn = keyColumn;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Sets the maximum rows read per query, a poll keeps reading pages until one comes back incomplete. Defaults to 1000
+     *
+     * @param batchSize rows per query, 0 reads all changes in a single query
+     * @return same WatermarkLoader instance
+     */
+    public WatermarkLoader<T> batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Resumes from a position saved from {@link #watermark()} and {@link #key()}, the next poll reads the rows after it
+     *
+     * @param watermark watermark of the last processed row, null to start from the beginning
+     * @param key       key of the last processed row
+     * @return same WatermarkLoader instance
+     */
+    public synchronized WatermarkLoader<T> resumeFrom(Object watermark, Object key) {
+        this.watermark = watermark;
+        this.key = key;
+        return this;
+    }
+
+    /**
+     * Watermark of the last delivered row
+     *
+     * @return the watermark, null before any row was delivered
+     */
+    public synchronized Object watermark() {
+        return watermark;
+    }
+
+    /**
+     * Key of the last delivered row
+     *
+     * @return the key, null before any row was delivered
+     */
+    public synchronized Object key() {
+        return key;
+    }
+
+    /**
+     * Reads the rows changed since the last poll in watermark order. The position advances after each row is accepted,
+     * so if the consumer throws, the next poll starts again with the failed row
+     *
+     * @param consumer receives each changed row
+     * @return number of rows delivered
+     */
+    public synchronized int poll(Consumer<? super T> consumer) {
+        int total = 0;
+        while (true) {
+            int read = page(consumer);
+            total += read;
+            if (batchSize <= 0 || read < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Reads the rows changed since the last poll and puts them into a snapshot, replacing the previous version of
+     * each row
+     *
+     * @param snapshot map of rows by key
+     * @param keyOf    key of a row
+     * @param <K>      key type
+     * @return number of rows merged
+     */
+    public <K> int poll(Map<K, T> snapshot, Function<? super T, ? extends K> keyOf) {
+        return poll(item -> snapshot.put(keyOf.apply(item), item));
+    }
+
+    /**
+     * Reads one page of changes
+     *
+     * @param consumer receives each changed row
+     * @return number of rows read
+     */
+    private int page(Consumer<? super T> consumer) {
+        var builder = dataAccess.select(table);
+        if (watermark != null) {
+            builder.where(new Condition(watermarkColumn, ">=", watermark))
+                    .and(ConditionGroup.or(new Condition(watermarkColumn, ">", watermark), new Condition(keyColumn, ">", key)));
+        }
+        builder.orderBy(watermarkColumn, keyColumn);
+        if (batchSize > 0) {
+            builder.limit(batchSize);
+        }
+        int[] read = {0};
+        builder.prepare().resultMapper(rs -> new Row<>(rs.getObject(watermarkColumn), rs.getObject(keyColumn), mapper.apply(rs)))
+                .forEach(row -> {
+                    consumer.accept(row.item());
+                    watermark = row.watermark();
+                    key = row.key();
+                    read[0]++;
+                });
+        return read[0];
+    }
+
+    /**
+     * Mapped row with its position
+     *
+     * @param watermark watermark of the row
+     * @param key       key of the row
+     * @param item      mapped row
+     * @param <T>       type of the row
+     */
+    private record Row<T>(Object watermark, Object key, T item) {
+    }
+}
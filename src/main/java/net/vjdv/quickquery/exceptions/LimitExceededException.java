@@ -0,0 +1,26 @@
+package net.vjdv.quickquery.exceptions;
+
+/**
+ * Thrown when a call is rejected by a concurrency limiter instead of reaching the database
+ */
+public class LimitExceededException extends DataAccessException {
+    /**
+     * Creates a new instance of LimitExceededException
+     *
+     * @param message exception message
+     */
+    public LimitExceededException(String message) {
+        super(message);
+    }
+
+    /**
+     * Creates a new instance of LimitExceededException
+     *
+     * @param message exception message
+     * @param cause   exception cause
+     */
+    public LimitExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,26 @@
+package net.vjdv.quickquery.exceptions;
+
+/**
+ * Thrown when a statement exceeds its timeout or deadline and is cancelled
+ */
+public class QueryTimeoutException extends DataAccessException {
+    /**
+     * Creates a new instance of QueryTimeoutException
+     *
+     * @param message exception message
+     */
+    public QueryTimeoutException(String message) {
+        super(message);
+    }
+
+    /**
+     * Creates a new instance of QueryTimeoutException
+     *
+     * @param message exception message
+     * @param cause   exception cause
+     */
+    public QueryTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
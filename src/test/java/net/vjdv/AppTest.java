@@ -1,17 +1,52 @@
 package net.vjdv;
 
+import net.vjdv.quickquery.AdaptiveFetchSize;
+import net.vjdv.quickquery.Condition;
+import net.vjdv.quickquery.ConditionGroup;
 import net.vjdv.quickquery.DataAccess;
+import net.vjdv.quickquery.ExportOptions;
+import net.vjdv.quickquery.KeySetQuery;
+import net.vjdv.quickquery.PreparedStatementBuilder;
+import net.vjdv.quickquery.QueryPipeline;
+import net.vjdv.quickquery.QueryPlan;
+import net.vjdv.quickquery.QueryPlans;
 import net.vjdv.quickquery.QuickQuery;
 import net.vjdv.quickquery.ResultSetWrapper;
+import net.vjdv.quickquery.RowCollectors;
+import net.vjdv.quickquery.StringPool;
+import net.vjdv.quickquery.WarmUp;
+import net.vjdv.quickquery.exceptions.DataAccessException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * Unit test for simple App.
@@ -40,6 +75,13 @@ public class AppTest {
                     datetime INTEGER
                 )""";
         data.query(sql).execute();
+        //Binary documents
+        sql = """
+                CREATE TABLE IF NOT EXISTS document (
+                    name TEXT PRIMARY KEY,
+                    content BLOB
+                )""";
+        data.query(sql).execute();
     }
 
     @Test
@@ -192,6 +234,527 @@ public class AppTest {
         Assertions.assertFalse(allPeople.isEmpty());
     }
 
+    @Test
+    public void testStreamingLobs() throws IOException {
+        var content = new byte[100_000];
+        new SecureRandom().nextBytes(content);
+        Path file = Files.createTempFile("quickquery", ".bin");
+        Files.write(file, content);
+        data.query("INSERT OR REPLACE INTO document (name, content) VALUES (?, ?)")
+                .setString("file")
+                .setFile(file)
+                .execute();
+        Files.delete(file);
+        var direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        data.query("INSERT OR REPLACE INTO document (name, content) VALUES (?, ?)")
+                .setString("buffer")
+                .setByteBuffer(direct)
+                .execute();
+        Assertions.assertEquals(content.length, direct.remaining());
+        for (String name : new String[]{"file", "buffer"}) {
+            var out = new ByteArrayOutputStream();
+            long written = data.query("SELECT content FROM document WHERE name = ?")
+                    .setString(name)
+                    .resultMapper(rs -> rs.transferTo("content", Channels.newChannel(out)))
+                    .findOne()
+                    .orElseThrow();
+            Assertions.assertEquals(content.length, written);
+            Assertions.assertArrayEquals(content, out.toByteArray());
+        }
+        var target = ByteBuffer.allocateDirect(1000);
+        int read = data.query("SELECT content FROM document WHERE name = ?")
+                .setString("buffer")
+                .resultMapper(rs -> rs.read(1, target))
+                .findOne()
+                .orElseThrow();
+        Assertions.assertEquals(1000, read);
+        Assertions.assertEquals(content[999], target.get(999));
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        data.query("INSERT INTO person (name, age) VALUES ('Export, \"Quoted\"', 41)").execute();
+        var csv = new ByteArrayOutputStream();
+        long rows = data.query("SELECT name, age FROM person WHERE age = ?")
+                .setInt(41)
+                .export(csv, ExportOptions.csv().flushEvery(1));
+        Assertions.assertTrue(rows >= 1);
+        var lines = csv.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals("name,age", lines[0]);
+        Assertions.assertEquals("\"Export, \"\"Quoted\"\"\",41", lines[1]);
+        var json = new ByteArrayOutputStream();
+        data.query("SELECT id, name, age FROM person WHERE age = ?")
+                .setInt(41)
+                .resultMapper(Person::new)
+                .export(json, ExportOptions.jsonLines().columns("name", "age"));
+        Assertions.assertTrue(json.toString(StandardCharsets.UTF_8).startsWith("{\"name\":\"Export, \\\"Quoted\\\"\",\"age\":41}\n"));
+        // one file per partition
+        Path dir = Files.createTempDirectory("quickquery");
+        long total = data.exportPartitioned(2,
+                partition -> data.query("SELECT id, name FROM person WHERE id % 2 = ?").setInt(partition),
+                partition -> dir.resolve("part" + partition + ".csv"),
+                ExportOptions.csv().header(false));
+        long count = data.query("SELECT COUNT(*) FROM person").resultMapper(rs -> rs.getLong(1)).findOne().orElseThrow();
+        Assertions.assertEquals(count, total);
+        Assertions.assertEquals(count, Files.readAllLines(dir.resolve("part0.csv")).size() + Files.readAllLines(dir.resolve("part1.csv")).size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExportOptions.csv().delimiter('\u00a7'));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> data.exportPartitioned(0, p -> data.query("SELECT 1"), p -> dir, ExportOptions.csv()));
+    }
+
+    @Test
+    public void testPipeline() {
+        data.query("INSERT INTO person (name, age) VALUES ('Pipe', 52)").execute();
+        var pipeline = data.pipeline();
+        var people = pipeline.add("SELECT name, age FROM person WHERE age = ?", Person::new, 52);
+        var count = pipeline.addOne("SELECT COUNT(*) FROM person", rs -> rs.getLong(1));
+        var missing = pipeline.addOne("SELECT name FROM person WHERE name = ?", rs -> rs.getString(1), "nobody");
+        Assertions.assertFalse(people.isDone());
+        pipeline.execute();
+        Assertions.assertEquals("Pipe", people.join().get(0).name());
+        Assertions.assertTrue(count.join().orElseThrow() > 0);
+        Assertions.assertTrue(missing.join().isEmpty());
+        // failures complete their future exceptionally
+        var failing = data.pipeline();
+        var bad = failing.add("SELECT * FROM missing_table", rs -> rs.getString(1));
+        var good = failing.addOne("SELECT 1", rs -> rs.getInt(1));
+        Assertions.assertThrows(DataAccessException.class, failing::execute);
+        Assertions.assertTrue(bad.isCompletedExceptionally());
+        Assertions.assertEquals(1, good.join().orElseThrow());
+    }
+
+    @Test
+    public void testPipelineCombinedMapperFailure() throws Exception {
+        try (var conn = DriverManager.getConnection("jdbc:sqlite:" + Files.createTempDirectory("pipeline").resolve("pipeline.sqlite"))) {
+            List<String> prepared = new ArrayList<>();
+            var pipeline = new QueryPipeline(multipleResultSets(conn, prepared));
+            var first = pipeline.addOne("SELECT ?", rs -> rs.getInt(1), 1);
+            var broken = pipeline.add("SELECT 2", rs -> {
+                throw new IllegalStateException("mapper failed");
+            });
+            var last = pipeline.addOne("SELECT ? + ?", rs -> rs.getInt(1), 1, 2);
+            Assertions.assertThrows(DataAccessException.class, pipeline::execute);
+            Assertions.assertEquals(1, prepared.size());
+            Assertions.assertEquals(1, first.join().orElseThrow());
+            Assertions.assertTrue(broken.isCompletedExceptionally());
+            Assertions.assertEquals(3, last.join().orElseThrow());
+        }
+    }
+
+    /**
+     * Connection reporting multiple result set support, the statement joined by the pipeline runs its queries one by
+     * one underneath
+     */
+    private static Connection multipleResultSets(Connection conn, List<String> prepared) {
+        return proxy(Connection.class, (method, args) -> switch (method.getName()) {
+            case "getMetaData" -> {
+                var metaData = conn.getMetaData();
+                yield proxy(DatabaseMetaData.class, (m, a) -> m.getName().equals("supportsMultipleResultSets") ? Boolean.TRUE : m.invoke(metaData, a));
+            }
+            case "prepareStatement" -> {
+                prepared.add((String) args[0]);
+                yield combined(conn, ((String) args[0]).split(";\n"));
+            }
+            default -> method.invoke(conn, args);
+        });
+    }
+
+    /**
+     * Statement running several queries, parameter indexes are shifted to the query they belong to
+     */
+    private static PreparedStatement combined(Connection conn, String[] queries) throws SQLException {
+        List<PreparedStatement> statements = new ArrayList<>();
+        int[] offsets = new int[queries.length + 1];
+        for (int i = 0; i < queries.length; i++) {
+            statements.add(conn.prepareStatement(queries[i]));
+            offsets[i + 1] = offsets[i] + statements.get(i).getParameterMetaData().getParameterCount();
+        }
+        int[] current = {0};
+        return proxy(PreparedStatement.class, (method, args) -> switch (method.getName()) {
+            case "execute" -> {
+                for (var stmt : statements) {
+                    stmt.execute();
+                }
+                yield true;
+            }
+            case "getResultSet" -> statements.get(current[0]).getResultSet();
+            case "getMoreResults" -> ++current[0] < statements.size();
+            case "getUpdateCount" -> -1;
+            case "close" -> {
+                for (var stmt : statements) {
+                    stmt.close();
+                }
+                yield null;
+            }
+            default -> {
+                int query = 0;
+                while ((int) args[0] > offsets[query + 1]) {
+                    query++;
+                }
+                args[0] = (int) args[0] - offsets[query];
+                yield method.invoke(statements.get(query), args);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(AppTest.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return handler.handle(method, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }));
+    }
+
+    @Test
+    public void testInConditions() {
+        data.query("INSERT INTO person (name, age) VALUES ('In1', 61), ('In2', 62), ('In3', 63)").execute();
+        var builder = data.select("person", "name", "age").where(Condition.in("age", List.of(61, 62, 63)));
+        Assertions.assertEquals("SELECT name, age FROM person WHERE age IN (?, ?, ?, ?)", builder.getSql());
+        Assertions.assertEquals(63, builder.getIndexParameters().get(4));
+        Assertions.assertEquals(3, builder.prepare().resultMapper(Person.class).list().stream().map(Person::name).distinct().count());
+        // same SQL for 5 to 8 values
+        var group = ConditionGroup.and(new Condition("name", "<>", "x"), Condition.in("age", List.of(1, 2, 3, 4, 5)));
+        Assertions.assertEquals("name <> ? AND age IN (?, ?, ?, ?, ?, ?, ?, ?)", group.getSql());
+        // single JSON parameter
+        var json = data.select(Person.class, b -> b.where(Condition.inJson("name", List.of("In1", "In3", "O\"Neil")))).list();
+        Assertions.assertEquals(Set.of("In1", "In3"), json.stream().map(Person::name).collect(Collectors.toSet()));
+        var any = new ConditionGroup(Condition.anyOf("id", "bigint", List.of(1L, 2L)));
+        Assertions.assertEquals("id = ANY(?)", any.getSql());
+        var notList = Assertions.assertThrows(DataAccessException.class, () -> new Condition("age", Condition.IN, 61));
+        Assertions.assertEquals("IN condition on age requires a collection of values", notList.getMessage());
+        var withNull = Assertions.assertThrows(DataAccessException.class, () -> Condition.in("age", Arrays.asList(61, null)));
+        Assertions.assertTrue(withNull.getMessage().contains("null value"), withNull.getMessage());
+        Assertions.assertEquals("age IN (?, ?)", new ConditionGroup(new Condition("age", Condition.IN, Set.of(61, 62))).getSql());
+    }
+
+    @Test
+    public void testSelectByKeys() {
+        data.query("CREATE TABLE IF NOT EXISTS lookup (id INTEGER PRIMARY KEY, label TEXT)").execute();
+        data.query("DELETE FROM lookup").execute();
+        data.disableAutoCommit();
+        try {
+            var insert = data.query("INSERT INTO lookup (id, label) VALUES (?, ?)");
+            for (int i = 1; i <= 3000; i++) {
+                insert.setInt(i).setString("label" + i).addBatch();
+            }
+            insert.executeBatch();
+            data.commit();
+        } finally {
+            data.enableAutoCommit();
+        }
+        List<Long> keys = LongStream.rangeClosed(1, 4000).filter(i -> i % 2 == 0).boxed().toList();
+        for (var strategy : KeySetQuery.Strategy.values()) {
+            var labels = data.selectByKeys("lookup", "id", keys)
+                    .strategy(strategy)
+                    .chunkSize(256)
+                    .parallelism(2)
+                    .tempTableThreshold(1000)
+                    .list(rs -> rs.getString("label"));
+            Assertions.assertEquals(1500, labels.size(), strategy.name());
+            Assertions.assertTrue(labels.contains("label3000"));
+        }
+    }
+
+    @Test
+    public void testNamedParameters() {
+        data.query("INSERT INTO person (name, age) VALUES (:name, :age)", new Person("Named", 71)).execute();
+        String sql = """
+                SELECT name, age FROM person -- :ignored
+                WHERE (name = :name OR name = ':name') AND age >= :age AND age <= :age
+                """;
+        var people = data.query(sql, Map.of("name", "Named", "age", 71)).resultMapper(Person.class).list();
+        Assertions.assertFalse(people.isEmpty());
+        Assertions.assertEquals("Named", people.get(0).name());
+        Assertions.assertThrows(DataAccessException.class, () -> data.query(sql, Map.of("name", "Named")));
+    }
+
+    @Test
+    public void testStringDedup() {
+        var pool = new StringPool(64, 32);
+        String sql = "SELECT 'active' AS status, 'x' || ? AS code UNION ALL SELECT 'active', 'x' || ?";
+        var rows = data.query(sql).setParameters(Map.of(1, 1, 2, 1))
+                .resultMapper(rs -> new String[]{rs.getString("status"), rs.getString(2)})
+                .dedupStrings(pool, "STATUS")
+                .list();
+        Assertions.assertSame(rows.get(0)[0], rows.get(1)[0]);
+        Assertions.assertNotSame(rows.get(0)[1], rows.get(1)[1]);
+        Assertions.assertEquals(1, pool.hits());
+        data.query("INSERT INTO person (name, age) VALUES (?, ?)").setParameters(Map.of(1, "Pooled", 2, 30)).execute();
+        var people = data.query("SELECT name, age FROM person UNION ALL SELECT name, age FROM person")
+                .resultMapper(Person.class)
+                .dedupStrings()
+                .list();
+        Assertions.assertSame(people.get(0).name(), people.get(people.size() / 2).name());
+    }
+
+    @Test
+    public void testCollect() {
+        String sql = "SELECT value % 3 AS grp, value FROM json_each(?)";
+        var sums = data.query(sql).setString("[1,2,3,4,5,6,7,8,9,10]")
+                .collect(RowCollectors.sumByLong(rs -> rs.getLong("grp"), rs -> rs.getLong("value")));
+        Assertions.assertEquals(3, sums.size());
+        Assertions.assertEquals(3 + 6 + 9, sums.sum(0));
+        Assertions.assertEquals(4, sums.count(1));
+        Assertions.assertArrayEquals(new long[]{0, 1, 2}, sums.keys());
+        var top = data.query("SELECT value FROM json_each(?)").setString("[5,1,9,3,7,2]")
+                .collect(RowCollectors.topN(3, rs -> rs.getLong(1), rs -> rs.getLong(1)));
+        Assertions.assertEquals(List.of(9L, 7L, 5L), top);
+        var names = data.query("SELECT value FROM json_each(?)").setString("[\"a\",\"b\",\"a\"]")
+                .resultMapper(rs -> rs.getString(1))
+                .collect(Collectors.toSet());
+        Assertions.assertEquals(Set.of("a", "b"), names);
+    }
+
+    @Test
+    public void testOneToMany() {
+        String sql = """
+                WITH o(id, customer) AS (VALUES (1, 'ann'), (2, 'bob'), (3, 'cy')),
+                     l(order_id, product, qty) AS (VALUES (1, 'pen', 2), (1, 'ink', 1), (2, 'pad', 5))
+                SELECT o.id, o.customer, l.product AS line_product, l.qty AS line_qty
+                FROM o LEFT JOIN l ON l.order_id = o.id
+                ORDER BY o.id, l.product
+                """;
+        var orders = data.query(sql).oneToMany(Order.class, Line.class, "id", "line_");
+        Assertions.assertEquals(3, orders.size());
+        Assertions.assertEquals(new Order(1, "ann", List.of(new Line("ink", 1), new Line("pen", 2))), orders.get(0));
+        Assertions.assertEquals(List.of(new Line("pad", 5)), orders.get(1).lines());
+        Assertions.assertTrue(orders.get(2).lines().isEmpty());
+    }
+
+    @Test
+    public void testToIndex() {
+        String sql = "SELECT value AS id, 'item' || value AS name FROM json_each(?)";
+        String keys = LongStream.rangeClosed(1, 5000).map(i -> i * 7).mapToObj(Long::toString).collect(Collectors.joining(",", "[", "]"));
+        var index = data.query(sql).setString(keys).resultMapper(rs -> rs.getString("name")).toIndex("id", 100);
+        Assertions.assertEquals(5000, index.size());
+        Assertions.assertEquals("item35000", index.get(35000));
+        Assertions.assertNull(index.get(35001));
+        Assertions.assertFalse(index.containsKey(0));
+        var small = data.query(sql).setString("[3,null,4]").resultMapper(rs -> rs.getLong("id")).toIntIndex("id");
+        Assertions.assertEquals(2, small.size());
+        Assertions.assertEquals(4L, small.get(4));
+        Assertions.assertEquals(-1L, small.getOrDefault(5, -1L));
+    }
+
+    @Test
+    public void testAdaptiveFetchSize() {
+        var tuner = new AdaptiveFetchSize(64 * 1024).sampleRows(16).maxRows(500);
+        String sql = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 2000) SELECT i, printf('%0100d', i) AS pad FROM n";
+        Assertions.assertTrue(tuner.tunedFetchSize(sql).isEmpty());
+        var rows = data.query(sql).resultMapper(rs -> rs.getLong("i")).adaptiveFetchSize(tuner).list();
+        Assertions.assertEquals(2000, rows.size());
+        Assertions.assertEquals(2000L, rows.get(1999));
+        int size = tuner.tunedFetchSize(sql.replace("2000", "10")).orElseThrow();
+        Assertions.assertTrue(size >= 10 && size <= 500, "fetch size " + size);
+        Assertions.assertEquals(10, data.query(sql.replace("2000", "10")).resultMapper(rs -> rs.getLong("i")).adaptiveFetchSize(tuner).list().size());
+    }
+
+    @Test
+    public void testPrefetch() {
+        String sql = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 5000) SELECT i FROM n";
+        long[] sum = {0};
+        data.query(sql).resultMapper(rs -> rs.getLong("i")).prefetch(64).forEach(i -> sum[0] += i);
+        Assertions.assertEquals(5000L * 5001 / 2, sum[0]);
+        var total = data.query(sql).resultMapper(rs -> rs.getLong("i")).prefetch(100, 3).collect(Collectors.summingLong(i -> i));
+        Assertions.assertEquals(5000L * 5001 / 2, total);
+        var readers = new HashSet<Thread>();
+        try (var stream = data.query(sql).resultMapper(rs -> {
+            readers.add(Thread.currentThread());
+            return rs.getLong("i");
+        }).stream()) {
+            Assertions.assertEquals(List.of(1L, 2L, 3L), stream.limit(3).toList());
+        }
+        Assertions.assertEquals(Set.of(Thread.currentThread()), readers);
+        Assertions.assertEquals(5000L * 5001 / 2, data.query(sql).resultMapper(rs -> rs.getLong("i")).stream().mapToLong(i -> i).sum());
+        try (var stream = data.query(sql).resultMapper(rs -> rs.getLong("i")).prefetch(100).stream()) {
+            Assertions.assertEquals(List.of(1L, 2L, 3L), stream.limit(3).toList());
+        }
+        var stop = Assertions.assertThrows(IllegalStateException.class, () -> data.query(sql).resultMapper(rs -> rs.getLong("i")).prefetch(10).forEach(i -> {
+            if (i == 25) {
+                throw new IllegalStateException("stop");
+            }
+        }));
+        Assertions.assertEquals("stop", stop.getMessage());
+        Assertions.assertThrows(DataAccessException.class, () -> data.query(sql).resultMapper(rs -> rs.getString("missing")).prefetch(10).forEach(i -> {
+        }));
+    }
+
+    @Test
+    public void testParallelMapping() {
+        String sql = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 3000) SELECT i AS qty, 'p' || i AS product, NULL AS note FROM n";
+        var lines = data.query(sql).resultMapper(Line.class).parallel(64).list();
+        Assertions.assertEquals(3000, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Assertions.assertEquals(new Line("p" + (i + 1), i + 1), lines.get(i));
+        }
+        var names = data.query(sql).resultMapper(rs -> {
+            String note = rs.getString("note");
+            Assertions.assertTrue(rs.wasNull());
+            return rs.getString("PRODUCT") + note + rs.getDouble(1);
+        }).parallel(100).prefetch(50).stream().skip(2998).toList();
+        Assertions.assertEquals(List.of("p2999null2999.0", "p3000null3000.0"), names);
+        Assertions.assertThrows(DataAccessException.class, () -> data.query(sql).resultMapper(rs -> rs.getLong("missing")).parallel(10).list());
+    }
+
+    @Test
+    public void testWatermarkLoader() {
+        data.query("DROP TABLE IF EXISTS setting").execute();
+        data.query("CREATE TABLE setting (id INTEGER PRIMARY KEY, name TEXT, version INTEGER)").execute();
+        for (int i = 1; i <= 5; i++) {
+            data.query("INSERT INTO setting (id, name, version) VALUES (?, ?, ?)").setInt(i).setString("s" + i).setInt(i <= 3 ? 1 : 2).execute();
+        }
+        var snapshot = new HashMap<Long, Setting>();
+        var loader = data.watermarkLoader(Setting.class, "version", "id").batchSize(2);
+        Assertions.assertEquals(5, loader.poll(snapshot, Setting::id));
+        Assertions.assertEquals(5, snapshot.size());
+        Assertions.assertEquals(2L, ((Number) loader.watermark()).longValue());
+        Assertions.assertEquals(0, loader.poll(snapshot, Setting::id));
+        data.query("UPDATE setting SET name = 'changed', version = 3 WHERE id = 2").execute();
+        data.query("INSERT INTO setting (id, name, version) VALUES (6, 's6', 3)").execute();
+        List<Setting> changes = new ArrayList<>();
+        Assertions.assertEquals(2, loader.poll(changes::add));
+        Assertions.assertEquals(List.of(new Setting(2, "changed", 3), new Setting(6, "s6", 3)), changes);
+        var resumed = data.watermarkLoader(Setting.class, "version", "id").resumeFrom(1, 2);
+        List<Long> ids = new ArrayList<>();
+        resumed.poll(setting -> ids.add(setting.id()));
+        Assertions.assertEquals(List.of(3L, 4L, 5L, 2L, 6L), ids);
+    }
+
+    @Test
+    public void testReferenceTable() {
+        data.query("DROP TABLE IF EXISTS country").execute();
+        data.query("CREATE TABLE country (code TEXT PRIMARY KEY, name TEXT)").execute();
+        data.query("INSERT INTO country (code, name) VALUES ('MX', 'Mexico'), ('US', 'United States')").execute();
+        try (var countries = data.referenceTable(Country.class, Country::code)) {
+            Assertions.assertTrue(countries.loadedAt().isEmpty());
+            Assertions.assertEquals("Mexico", countries.get("MX").map(Country::name).orElseThrow());
+            Assertions.assertEquals(2, countries.size());
+            data.query("INSERT INTO country (code, name) VALUES ('CA', 'Canada')").execute();
+            Assertions.assertTrue(countries.get("CA").isEmpty());
+            Assertions.assertTrue(countries.refresh());
+            Assertions.assertEquals("Canada", countries.get("CA").map(Country::name).orElseThrow());
+            data.query("DROP TABLE country").execute();
+            Assertions.assertFalse(countries.refresh());
+            Assertions.assertTrue(countries.lastError().isPresent());
+            Assertions.assertEquals(3, countries.all().size());
+        }
+    }
+
+    @Test
+    public void testNearCache() {
+        data.query("DROP TABLE IF EXISTS profile").execute();
+        data.query("CREATE TABLE profile (id INTEGER PRIMARY KEY, name TEXT)").execute();
+        var cache = data.nearCache(Profile.class, "id", 100).negativeCaching(true);
+        data.insert(new Profile(1, "Ana"));
+        Assertions.assertEquals("Ana", data.findByKey(Profile.class, "id", 1).map(Profile::name).orElseThrow());
+        Assertions.assertEquals(1, cache.hits());
+        Assertions.assertTrue(data.findByKey(Profile.class, "id", 2).isEmpty());
+        Assertions.assertTrue(data.findByKey(Profile.class, "id", 2L).isEmpty());
+        Assertions.assertEquals(1, cache.misses());
+        data.insert(new Profile(2, "Luis"));
+        Assertions.assertEquals("Luis", data.findByKey(Profile.class, "id", 2).map(Profile::name).orElseThrow());
+        Assertions.assertEquals(1, data.update(new Profile(2, "Luisa"), "id"));
+        Assertions.assertEquals("Luisa", data.findByKey(Profile.class, "id", 2).map(Profile::name).orElseThrow());
+        Assertions.assertEquals("Luisa", data.query("SELECT name FROM profile WHERE id = 2").resultMapper(rs -> rs.getString(1)).findOne().orElseThrow());
+        Assertions.assertEquals(1, data.delete(Profile.class, "id", 1));
+        Assertions.assertTrue(data.findByKey(Profile.class, "id", 1).isEmpty());
+        Assertions.assertEquals(2, cache.misses());
+        data.upsertAll(Profile.class, List.of(new Profile(1, "Ana")), "id");
+        Assertions.assertEquals("Ana", data.findByKey(Profile.class, "id", 1).map(Profile::name).orElseThrow());
+        Assertions.assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testNearCacheLoadDuringDelete() throws Exception {
+        var conn = DriverManager.getConnection("jdbc:sqlite:" + Files.createTempDirectory("near").resolve("near.sqlite"));
+        var racing = new DataAccess(() -> conn) {
+            boolean raced;
+
+            @Override
+            protected PreparedStatementBuilder prepare(String sql) {
+                if (sql.startsWith("DELETE") && !raced) {
+                    raced = true;
+                    Assertions.assertTrue(findByKey(Profile.class, "id", 1).isPresent());
+                }
+                return super.prepare(sql);
+            }
+        };
+        racing.query("CREATE TABLE profile (id INTEGER PRIMARY KEY, name TEXT)").execute();
+        racing.nearCache(Profile.class, "id", 10);
+        racing.insert(new Profile(1, "Ana"));
+        Assertions.assertEquals(1, racing.delete(Profile.class, "id", 1));
+        Assertions.assertTrue(racing.raced);
+        Assertions.assertTrue(racing.findByKey(Profile.class, "id", 1).isEmpty());
+        conn.close();
+    }
+
+    @Test
+    public void testQueryPlans() {
+        data.query("DROP TABLE IF EXISTS visit").execute();
+        data.query("CREATE TABLE visit (id INTEGER PRIMARY KEY, user_id INTEGER, at INTEGER)").execute();
+        data.query("INSERT INTO visit (user_id, at) VALUES (1, 10), (1, 20), (2, 30)").execute();
+        List<QueryPlan> captured = new ArrayList<>();
+        var plans = new QueryPlans(captured::add);
+        data.setQueryPlans(plans);
+        try {
+            Assertions.assertEquals(2, data.query("SELECT at FROM visit WHERE user_id = ?").setInt(1).resultMapper(rs -> rs.getLong(1)).list().size());
+            Assertions.assertEquals(1, data.query("SELECT at FROM visit WHERE user_id = ?").setInt(2).resultMapper(rs -> rs.getLong(1)).list().size());
+            Assertions.assertEquals(1, captured.size());
+            Assertions.assertEquals(List.of("visit"), captured.get(0).fullScans());
+            data.query("SELECT at FROM visit WHERE id = ?").setInt(1).resultMapper(rs -> rs.getLong(1)).findOne();
+            Assertions.assertFalse(captured.get(1).hasProblems());
+            data.query("SELECT user_id FROM visit WHERE id > 0 ORDER BY at").resultMapper(rs -> rs.getLong(1)).list();
+            Assertions.assertTrue(captured.get(2).tempSort());
+            Assertions.assertEquals(1, data.query("SELECT 1").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+            Assertions.assertFalse(captured.get(3).hasProblems(), captured.get(3).plan().toString());
+            data.query("WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n WHERE x < 3) SELECT x FROM n").resultMapper(rs -> rs.getInt(1)).list();
+            Assertions.assertFalse(captured.get(4).hasProblems(), captured.get(4).plan().toString());
+            Assertions.assertEquals(2, plans.flagged().size());
+            Assertions.assertThrows(DataAccessException.class, plans::verify);
+        } finally {
+            data.setQueryPlans(null);
+        }
+    }
+
+    @Test
+    public void testWarmUp() {
+        var report = data.warmUp(new WarmUp()
+                .statements("SELECT name, age FROM person WHERE id = ?", "SELECT * FROM missing_table")
+                .records(Person.class, Line.class)
+                .dryRun("SELECT name, age FROM person WHERE age > ?", 0)
+                .connections(4));
+        Assertions.assertEquals(1, report.connections());
+        Assertions.assertEquals(2, report.prepared());
+        Assertions.assertEquals(2, report.mappers());
+        Assertions.assertEquals(1, report.executed());
+        Assertions.assertEquals(1, report.failures().size(), report.failures().toString());
+        Assertions.assertTrue(report.failures().get(0).contains("missing_table"));
+        Assertions.assertFalse(report.elapsed().isNegative());
+        Assertions.assertEquals(1, data.query("SELECT 1").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    public record Order(long id, String customer, List<Line> lines) {
+    }
+
+    public record Line(String product, int qty) {
+    }
+
+    public record Profile(long id, String name) {
+    }
+
+    public record Country(String code, String name) {
+    }
+
+    public record Setting(long id, String name, long version) {
+    }
+
     public record Person(String name, int age) {
         public Person(ResultSetWrapper rs) {
             this(rs.getString("name"), rs.getInt("age"));
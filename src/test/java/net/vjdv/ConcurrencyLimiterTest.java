@@ -0,0 +1,144 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.ConcurrencyLimiter;
+import net.vjdv.quickquery.QuickQuery;
+import net.vjdv.quickquery.exceptions.DataAccessException;
+import net.vjdv.quickquery.exceptions.LimitExceededException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Adaptive concurrency limits, queueing and rejection
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testRejectsWhenFull() {
+        var limiter = new ConcurrencyLimiter(1).maxWait(Duration.ZERO);
+        var permit = limiter.acquire();
+        Assertions.assertThrows(LimitExceededException.class, limiter::acquire);
+        Assertions.assertEquals(1, limiter.rejected());
+        permit.close();
+        permit.close();
+        Assertions.assertEquals(0, limiter.inFlight());
+        limiter.acquire().close();
+    }
+
+    @Test
+    public void testQueueTimeout() {
+        var limiter = new ConcurrencyLimiter(1).maxWait(Duration.ofMillis(50));
+        try (var ignored = limiter.acquire()) {
+            long start = System.nanoTime();
+            Assertions.assertThrows(LimitExceededException.class, limiter::acquire);
+            Assertions.assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        }
+    }
+
+    @Test
+    public void testAdaptsToLatency() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(4).maxLimit(10);
+        for (int i = 0; i < 10; i++) {
+            var a = limiter.acquire();
+            var b = limiter.acquire();
+            var c = limiter.acquire();
+            var d = limiter.acquire();
+            Thread.sleep(5);
+            a.close();
+            b.close();
+            c.close();
+            d.close();
+        }
+        int grown = limiter.limit();
+        Assertions.assertTrue(grown > 4);
+        try (var ignored = limiter.acquire()) {
+            Thread.sleep(40);
+        }
+        Assertions.assertTrue(limiter.limit() < grown);
+    }
+
+    @Test
+    public void testDataAccessHoldsSlotWhileExecuting() throws Exception {
+        var file = Files.createTempDirectory("limiter").resolve("limited.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        data.setConcurrencyLimiter(new ConcurrencyLimiter(1).maxWait(Duration.ZERO));
+        var pending = data.query("SELECT 1");
+        Assertions.assertEquals(0, data.concurrencyLimiter().inFlight());
+        try (var rs = data.query("SELECT 2 UNION ALL SELECT 3").executeQuery()) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(1, data.concurrencyLimiter().inFlight());
+            Assertions.assertThrows(LimitExceededException.class, () -> pending.resultMapper(r -> r.getInt(1)).findOne());
+        }
+        Assertions.assertEquals(0, data.concurrencyLimiter().inFlight());
+        Assertions.assertEquals(1, data.query("SELECT 1").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testExecuteQueryReleasesSlotWhenClosed() throws Exception {
+        var file = Files.createTempDirectory("limiter").resolve("limited.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        data.setConcurrencyLimiter(new ConcurrencyLimiter(2).maxWait(Duration.ZERO));
+        for (int i = 0; i < 3; i++) {
+            var sum = new int[1];
+            data.query("SELECT 1 UNION ALL SELECT 2").executeQuery().forEach(rs -> sum[0] += rs.getInt(1));
+            Assertions.assertEquals(3, sum[0]);
+        }
+        for (int i = 0; i < 3; i++) {
+            try (var rs = data.query("SELECT 1 UNION ALL SELECT 2").executeQuery()) {
+                Assertions.assertTrue(rs.next());
+            }
+        }
+        Assertions.assertEquals(0, data.concurrencyLimiter().inFlight());
+        Assertions.assertEquals(2, data.query("SELECT 2").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testMissingNamedParameterHoldsNoSlot() throws Exception {
+        var file = Files.createTempDirectory("limiter").resolve("limited.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        data.setConcurrencyLimiter(new ConcurrencyLimiter(1).maxWait(Duration.ZERO));
+        for (int i = 0; i < 2; i++) {
+            var ex = Assertions.assertThrows(DataAccessException.class, () -> data.query("SELECT :a + :b", Map.of("a", 1)));
+            Assertions.assertFalse(ex instanceof LimitExceededException);
+        }
+        Assertions.assertEquals(0, data.concurrencyLimiter().inFlight());
+        Assertions.assertEquals(3, data.query("SELECT :a + :b", Map.of("a", 1, "b", 2)).resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testFailedBindHoldsNoSlot() throws Exception {
+        var file = Files.createTempDirectory("limiter").resolve("limited.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        data.setConcurrencyLimiter(new ConcurrencyLimiter(1).maxWait(Duration.ZERO));
+        for (int i = 0; i < 3; i++) {
+            var ex = Assertions.assertThrows(RuntimeException.class, () -> data.query("SELECT ?").setString("a", 5));
+            Assertions.assertFalse(ex instanceof LimitExceededException);
+        }
+        data.query("SELECT ?");
+        Assertions.assertEquals(0, data.concurrencyLimiter().inFlight());
+        Assertions.assertEquals(1, data.query("SELECT ?").setInt(1).resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testLatencyExcludesConsumerTime() throws Exception {
+        var file = Files.createTempDirectory("limiter").resolve("limited.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        var limiter = new ConcurrencyLimiter(4).tolerance(100);
+        data.setConcurrencyLimiter(limiter);
+        for (int i = 0; i < 5; i++) {
+            data.query("SELECT 1 UNION ALL SELECT 2").resultMapper(rs -> rs.getInt(1)).list();
+        }
+        int limit = limiter.limit();
+        data.query("SELECT 1 UNION ALL SELECT 2").resultMapper(rs -> rs.getInt(1)).forEach(value -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertEquals(limit, limiter.limit());
+    }
+}
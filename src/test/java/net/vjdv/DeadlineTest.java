@@ -0,0 +1,62 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.DataAccess;
+import net.vjdv.quickquery.Deadline;
+import net.vjdv.quickquery.QuickQuery;
+import net.vjdv.quickquery.exceptions.QueryTimeoutException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+
+/**
+ * Statement timeouts, propagated deadlines and cancellation
+ */
+public class DeadlineTest {
+    private static final String ENDLESS = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n) SELECT COUNT(*) FROM n";
+    private static final String MANY_ROWS = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n LIMIT 100000) SELECT i FROM n";
+
+    private static DataAccess database() throws Exception {
+        var file = Files.createTempDirectory("deadline").resolve("deadline.sqlite");
+        return QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+    }
+
+    @Test
+    public void testTimeoutCancelsRunningQuery() throws Exception {
+        var data = database();
+        long start = System.nanoTime();
+        Assertions.assertThrows(QueryTimeoutException.class, () -> data.query(ENDLESS)
+                .timeout(Duration.ofMillis(200))
+                .resultMapper(rs -> rs.getLong(1))
+                .findOne());
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5);
+        Assertions.assertEquals(1, data.query("SELECT 1").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testDeadlineWhileReadingRows() throws Exception {
+        var data = database();
+        Assertions.assertThrows(QueryTimeoutException.class, () -> Deadline.run(Deadline.after(Duration.ofMillis(100)), () ->
+                data.query(MANY_ROWS).resultMapper(rs -> rs.getLong(1)).forEach(i -> sleep())));
+    }
+
+    @Test
+    public void testExpiredDeadlineAndDefaultTimeout() throws Exception {
+        var data = database();
+        var expired = Deadline.after(Duration.ZERO);
+        Assertions.assertThrows(QueryTimeoutException.class, () -> Deadline.run(expired, () -> data.query("SELECT 1")));
+        Assertions.assertTrue(Deadline.current().isEmpty());
+        data.setDefaultTimeout(Duration.ofMillis(200));
+        Assertions.assertThrows(QueryTimeoutException.class, () -> data.query(ENDLESS).resultMapper(rs -> rs.getLong(1)).list());
+        Assertions.assertEquals(100000, data.query(MANY_ROWS).resultMapper(rs -> rs.getLong(1)).list().size());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
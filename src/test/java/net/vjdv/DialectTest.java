@@ -0,0 +1,70 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.DataAccess;
+import net.vjdv.quickquery.Dialect;
+import net.vjdv.quickquery.QuickQuery;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Dialect detection, bulk insert, upsert and pagination on SQLite and an in-memory H2 database
+ */
+public class DialectTest {
+
+    private static List<Metric> metrics(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> new Metric(i, "m" + i, i / 2.0)).collect(Collectors.toList());
+    }
+
+    private static void assertBulkAndPages(DataAccess data) {
+        data.query("CREATE TABLE metric (id BIGINT PRIMARY KEY, name VARCHAR(20), reading DOUBLE PRECISION)").execute();
+        Assertions.assertEquals(2500, data.insertAll(Metric.class, metrics(2500)));
+        long count = data.query("SELECT COUNT(*) FROM metric").resultMapper(rs -> rs.getLong(1)).findOne().orElseThrow();
+        Assertions.assertEquals(2500, count);
+        var page = data.select("metric", "id").orderBy("id").limit(10, 5).prepare().resultMapper(rs -> rs.getLong(1)).list();
+        Assertions.assertEquals(LongStream.rangeClosed(6, 15).boxed().collect(Collectors.toList()), page);
+    }
+
+    private static void assertUpsert(DataAccess data) {
+        var changes = IntStream.rangeClosed(2496, 2505).mapToObj(i -> new Metric(i, "u" + i, i)).collect(Collectors.toList());
+        var result = data.upsertAll(Metric.class, changes, "id");
+        Assertions.assertEquals(10, result.affected());
+        long count = data.query("SELECT COUNT(*) FROM metric").resultMapper(rs -> rs.getLong(1)).findOne().orElseThrow();
+        Assertions.assertEquals(2505, count);
+        String name = data.query("SELECT name FROM metric WHERE id = 2500").resultMapper(rs -> rs.getString(1)).findOne().orElseThrow();
+        Assertions.assertEquals("u2500", name);
+    }
+
+    @Test
+    public void testSqlite() throws Exception {
+        var file = Files.createTempDirectory("dialect").resolve("metrics.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        Assertions.assertEquals("sqlite", data.dialect().name());
+        assertBulkAndPages(data);
+        assertUpsert(data);
+    }
+
+    @Test
+    public void testH2() {
+        var data = QuickQuery.createConnection("org.h2.Driver", "jdbc:h2:mem:dialect_h2");
+        Assertions.assertEquals("h2", data.dialect().name());
+        assertBulkAndPages(data);
+        assertUpsert(data);
+    }
+
+    @Test
+    public void testGenericFallback() {
+        var data = QuickQuery.createConnection("org.h2.Driver", "jdbc:h2:mem:dialect_generic");
+        data.setDialect(Dialect.generic());
+        assertBulkAndPages(data);
+        assertUpsert(data);
+    }
+
+    public record Metric(long id, String name, double reading) {
+    }
+}
@@ -0,0 +1,50 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.DataAccess;
+import net.vjdv.quickquery.QuickQuery;
+import net.vjdv.quickquery.exceptions.DataAccessException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Records with a generated mapper are read by column index and written without reflection
+ */
+public class GeneratedMapperTest {
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 5, 6, 7, 8, 9);
+
+    private static DataAccess database() throws Exception {
+        var file = Files.createTempDirectory("generated").resolve("generated.sqlite");
+        var data = QuickQuery.createConnection("org.sqlite.JDBC", "jdbc:sqlite:" + file);
+        data.query("CREATE TABLE reading (id INTEGER PRIMARY KEY, sensor TEXT, value REAL, at INTEGER)").execute();
+        return data;
+    }
+
+    @Test
+    public void testGeneratedMapperReadsAndWrites() throws Exception {
+        var data = database();
+        var readings = LongStream.rangeClosed(1, 50).mapToObj(i -> new Reading(i, "s" + i % 3, i / 2.0, AT.plusMinutes(i))).toList();
+        Assertions.assertEquals(50, data.insertAll(Reading.class, readings));
+        Assertions.assertEquals(readings, data.query("SELECT at, value, sensor, id FROM reading ORDER BY id").resultMapper(Reading.class).list());
+        Assertions.assertEquals(readings, data.query("SELECT * FROM reading ORDER BY id").resultMapper(Reading.class).parallel(7).list());
+        Assertions.assertEquals(new Reading(51, null, 0, null), data.query("SELECT 51 AS id, NULL AS sensor, NULL AS value, NULL AS at")
+                .resultMapper(Reading.class).findOne().orElseThrow());
+    }
+
+    @Test
+    public void testGeneratedMapperResolvesColumnsByName() throws Exception {
+        var data = database();
+        data.insertAll(Reading.class, List.of(new Reading(1, "s1", 1, AT)));
+        var ex = Assertions.assertThrows(DataAccessException.class, () -> data.query("SELECT id, sensor, value FROM reading")
+                .resultMapper(Reading.class).list());
+        Assertions.assertTrue(messages(ex).contains("Column at not found"), messages(ex).toString());
+    }
+
+    private static List<String> messages(Throwable ex) {
+        return ex.getCause() == null ? List.of(ex.getMessage()) : List.of(ex.getMessage(), ex.getCause().getMessage());
+    }
+}
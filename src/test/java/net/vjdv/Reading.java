@@ -0,0 +1,17 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.GenerateMapper;
+
+import java.time.LocalDateTime;
+
+/**
+ * Record with a mapper generated by quickquery-processor, checked in as {@link Reading_QuickQueryMapper}
+ *
+ * @param id     reading id
+ * @param sensor sensor name
+ * @param value  measured value
+ * @param at     when it was measured
+ */
+@GenerateMapper
+public record Reading(long id, String sensor, double value, LocalDateTime at) {
+}
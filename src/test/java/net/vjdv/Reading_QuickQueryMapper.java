@@ -0,0 +1,37 @@
+package net.vjdv;
+
+/**
+ * Mapper of {@link net.vjdv.Reading} generated by quickquery-processor, do not edit
+ */
+public final class Reading_QuickQueryMapper implements net.vjdv.quickquery.RecordMapper<net.vjdv.Reading> {
+    private static final String[] COLUMNS = {"id", "sensor", "value", "at"};
+
+    /**
+     * Creates a new instance of Reading_QuickQueryMapper
+     */
+    public Reading_QuickQueryMapper() {
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public net.vjdv.Reading map(net.vjdv.quickquery.ResultSetWrapper rs, int[] indexes) {
+        return new net.vjdv.Reading(
+                rs.getLong(indexes[0]),
+                rs.getString(indexes[1]),
+                rs.getDouble(indexes[2]),
+                toLocal(rs.getZonedDateTimeLong(indexes[3], java.time.ZoneId.systemDefault())));
+    }
+
+    @Override
+    public Object[] values(net.vjdv.Reading record) {
+        return new Object[]{record.id(), record.sensor(), record.value(), record.at()};
+    }
+
+    private static java.time.LocalDateTime toLocal(java.time.ZonedDateTime value) {
+        return value == null ? null : value.toLocalDateTime();
+    }
+}
@@ -0,0 +1,66 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.DataAccess;
+import net.vjdv.quickquery.QuickQuery;
+import net.vjdv.quickquery.ReplicatedDataAccess;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Read/write splitting with one SQLite file per database
+ */
+public class ReplicatedDataAccessTest {
+
+    private static SQLiteDataSource database(Path dir, String name) {
+        var ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + dir.resolve(name + ".sqlite"));
+        DataAccess data = QuickQuery.fromDataSource(ds);
+        data.query("CREATE TABLE IF NOT EXISTS item (name TEXT)").execute();
+        data.query("DELETE FROM item").execute();
+        data.query("INSERT INTO item (name) VALUES (?)").setString(name).execute();
+        return ds;
+    }
+
+    private static String readName(DataAccess data) {
+        return data.query("SELECT name FROM item LIMIT 1").resultMapper(rs -> rs.getString("name")).findOne().orElseThrow();
+    }
+
+    @Test
+    public void testReadsGoToReplicas() throws Exception {
+        Path dir = Files.createTempDirectory("replicas");
+        var data = QuickQuery.fromDataSources(database(dir, "primary"), database(dir, "replica1"), database(dir, "replica2"));
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            seen.add(readName(data));
+        }
+        Assertions.assertEquals(Set.of("replica1", "replica2"), seen);
+        // writes and primary reads
+        data.query("INSERT INTO item (name) VALUES ('written')").execute();
+        var written = data.primary().query("SELECT COUNT(*) FROM item WHERE name = 'written'")
+                .resultMapper(rs -> rs.getInt(1))
+                .findOne();
+        Assertions.assertEquals(1, written.orElseThrow());
+    }
+
+    @Test
+    public void testUnhealthyReplicas() throws Exception {
+        Path dir = Files.createTempDirectory("replicas");
+        var data = QuickQuery.fromDataSources(database(dir, "primary"), database(dir, "replica1"), database(dir, "replica2"))
+                .loadBalancing(ReplicatedDataAccess.LoadBalancing.LEAST_OUTSTANDING)
+                .healthCheck(conn -> readName(QuickQuery.fromConnection(conn)).equals("replica2"));
+        data.checkReplicas();
+        Assertions.assertEquals(1, data.healthyReplicas());
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("replica2", readName(data));
+        }
+        data.healthCheck(conn -> false).checkReplicas();
+        Assertions.assertEquals("primary", readName(data));
+    }
+
+}
@@ -0,0 +1,82 @@
+package net.vjdv;
+
+import net.vjdv.quickquery.QuickQuery;
+import net.vjdv.quickquery.ShardRouter;
+import net.vjdv.quickquery.ShardedDataAccess;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.LongStream;
+
+/**
+ * Sharding with one SQLite file per shard
+ */
+public class ShardedDataAccessTest {
+
+    private static ShardedDataAccess shards(ShardRouter router, int count) throws Exception {
+        Path dir = Files.createTempDirectory("shards");
+        var dataSources = new SQLiteDataSource[count];
+        for (int i = 0; i < count; i++) {
+            dataSources[i] = new SQLiteDataSource();
+            dataSources[i].setUrl("jdbc:sqlite:" + dir.resolve("shard" + i + ".sqlite"));
+        }
+        var sharded = QuickQuery.sharded(router, dataSources);
+        for (var shard : sharded.shards()) {
+            shard.query("CREATE TABLE event (id INTEGER PRIMARY KEY, name TEXT)").execute();
+        }
+        for (long id = 1; id <= 60; id++) {
+            sharded.shard(id).query("INSERT INTO event (id, name) VALUES (?, ?)").setLong(id).setString("event" + id).execute();
+        }
+        return sharded;
+    }
+
+    @Test
+    public void testConsistentHashScatterGather() throws Exception {
+        var sharded = shards(ShardRouter.consistentHash(3), 3);
+        Set<Integer> used = new HashSet<>();
+        for (long id = 1; id <= 60; id++) {
+            var event = sharded.shard(id).query("SELECT id, name FROM event WHERE id = ?")
+                    .setLong(id)
+                    .resultMapper(Event.class)
+                    .findOne();
+            Assertions.assertTrue(event.isPresent());
+            used.add(sharded.shards().indexOf(sharded.shard(id)));
+        }
+        Assertions.assertEquals(3, used.size());
+        var all = sharded.scatter("SELECT id, name FROM event").resultMapper(Event.class).list();
+        Assertions.assertEquals(60, all.size());
+        // ordered merge with limit
+        var top = sharded.scatter("SELECT id, name FROM event WHERE id > ? ORDER BY id DESC LIMIT ?")
+                .bind(b -> b.setLong(5).setInt(10))
+                .resultMapper(Event.class)
+                .mergeSorted(Comparator.comparingLong(Event::id).reversed(), 10);
+        Assertions.assertEquals(LongStream.rangeClosed(51, 60).boxed().sorted(Comparator.reverseOrder()).toList(), top.stream().map(Event::id).toList());
+    }
+
+    @Test
+    public void testRangeRouter() throws Exception {
+        var ranges = new TreeMap<Long, Integer>();
+        ranges.put(Long.MIN_VALUE, 0);
+        ranges.put(21L, 1);
+        ranges.put(41L, 2);
+        var sharded = shards(ShardRouter.ranges(ranges), 3);
+        var counts = sharded.shards().stream()
+                .map(shard -> shard.query("SELECT COUNT(*) FROM event").resultMapper(rs -> rs.getInt(1)).findOne().orElseThrow())
+                .toList();
+        Assertions.assertEquals(List.of(20, 20, 20), counts);
+        var merged = sharded.scatter("SELECT id, name FROM event ORDER BY id").resultMapper(Event.class)
+                .mergeSorted(Comparator.comparingLong(Event::id), 25);
+        Assertions.assertEquals(LongStream.rangeClosed(1, 25).boxed().toList(), merged.stream().map(Event::id).toList());
+    }
+
+    public record Event(long id, String name) {
+    }
+}
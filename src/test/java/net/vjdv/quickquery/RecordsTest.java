@@ -0,0 +1,34 @@
+package net.vjdv.quickquery;
+
+import net.vjdv.Reading;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Lookup of generated record mappers, records without one fall back to reflection
+ */
+public class RecordsTest {
+    record Plain(long id, String name) {
+    }
+
+    @Test
+    public void testGeneratedMapperIsFound() {
+        var generated = Records.generated(Reading.class);
+        Assertions.assertNotNull(generated);
+        Assertions.assertEquals("net.vjdv.Reading_QuickQueryMapper", generated.getClass().getName());
+        Assertions.assertInstanceOf(IndexedRecordMapper.class, PreparedStatementBuilder.recordMapper(Reading.class));
+        var at = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        Assertions.assertEquals(List.of("id", "sensor", "value", "at"), List.copyOf(Records.values(new Reading(1, "s", 2.5, at)).keySet()));
+        Assertions.assertArrayEquals(new Object[]{1L, "s", 2.5, Records.toParameter(at)}, Records.parameters(new Reading(1, "s", 2.5, at)));
+    }
+
+    @Test
+    public void testReflectionFallback() {
+        Assertions.assertNull(Records.generated(Plain.class));
+        Assertions.assertFalse(PreparedStatementBuilder.recordMapper(Plain.class) instanceof IndexedRecordMapper);
+        Assertions.assertArrayEquals(new Object[]{1L, "a"}, Records.parameters(new Plain(1, "a")));
+    }
+}